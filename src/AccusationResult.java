@@ -0,0 +1,64 @@
+/**
+ * An AccusationResult is the outcome of an accusation: the cards accused,
+ * and whether each of them matched the envelope.
+ * It is only turned into text by the GUI.
+ * @author Edwin
+ *
+ */
+public class AccusationResult {
+
+	private Player accuser;
+	private Character character;
+	private Weapon weapon;
+	private Room room;
+	private boolean characterCorrect;
+	private boolean weaponCorrect;
+	private boolean roomCorrect;
+
+	public AccusationResult(Player accuser, Character character, Weapon weapon, Room room,
+			boolean characterCorrect, boolean weaponCorrect, boolean roomCorrect) {
+		this.accuser = accuser;
+		this.character = character;
+		this.weapon = weapon;
+		this.room = room;
+		this.characterCorrect = characterCorrect;
+		this.weaponCorrect = weaponCorrect;
+		this.roomCorrect = roomCorrect;
+	}
+
+	public Player getAccuser() {
+		return accuser;
+	}
+
+	public Character getCharacter() {
+		return character;
+	}
+
+	public Weapon getWeapon() {
+		return weapon;
+	}
+
+	public Room getRoom() {
+		return room;
+	}
+
+	public boolean isCharacterCorrect() {
+		return characterCorrect;
+	}
+
+	public boolean isWeaponCorrect() {
+		return weaponCorrect;
+	}
+
+	public boolean isRoomCorrect() {
+		return roomCorrect;
+	}
+
+	/**
+	 * Return if the whole accusation was correct, winning the game.
+	 * @return
+	 */
+	public boolean isCorrect() {
+		return characterCorrect && weaponCorrect && roomCorrect;
+	}
+}
@@ -1,7 +1,9 @@
 import java.awt.Graphics;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.List;
+import java.util.SplittableRandom;
+import java.util.zip.CRC32;
 
 /**
  * The board class represents the physical Cluedo game board.
@@ -13,18 +15,83 @@ import java.util.List;
  */
 public class Board {
 	//board represented as a list of strings of chars
-	private String[] brd = new String[25];
+	private String[] brd = new String[boardSize];
+	//board compiled into one byte per tile, indexed by y*25+x, see compileBoard()
+	private byte[] tiles = new byte[boardSize*boardSize];
+	//for each tile, the tile its secret passage leads to, or -1
+	private int[] passages = new int[boardSize*boardSize];
+	//for each room, the tiles a token can be placed on, in the order they are filled
+	private int[][] roomSlots;
+	//for each tile, its position in its room's list of slots, or -1
+	private byte[] slotOf = new byte[boardSize*boardSize];
+	//for each room, a bit for each of its slots that is not occupied
+	private long[] freeSlots;
 	//reference to list of players
 	private List<Player> players;
 	//list of weapons for drawing in their corresponding rooms
 	private List<WeaponLoc> weapons = new ArrayList<WeaponLoc>();
 	private static final int nWeapons = 6;
-	private static final int moveCap = 10;
+	private static final int boardSize = 25;
+	//reachability of each tile for the current roll, see reachable()
+	private int[] reach = new int[boardSize*boardSize];
+	private int[] reachPrev = new int[boardSize*boardSize];
+	private Player reachPlayer;
+	private int reachFrom;
+	private int reachDie;
+	private int reachVersion;
+	//which tiles hold a player or weapon, kept up to date as they move
+	private long[] playerBits = new long[(boardSize*boardSize+63)/64];
+	private long[] weaponBits = new long[(boardSize*boardSize+63)/64];
+	private Player[] playerAt = new Player[boardSize*boardSize];
+	private WeaponLoc[] weaponAt = new WeaponLoc[boardSize*boardSize];
+	//tiles whose tokens have changed since the canvas last redrew them
+	private long[] dirtyBits = new long[(boardSize*boardSize+63)/64];
+	//incremented whenever a player moves, so cached searches know to start again
+	private int playerVersion;
+	//shortest distances between every pair of tiles, loaded on first use
+	private DistanceTable distances;
+	//work queue for the movement search, large enough to never wrap onto itself,
+	//one per thread rather than per board, as it is only used during a search
+	private static final int queueMask = 4095;
+	private static final ThreadLocal<int[]> queues = new ThreadLocal<int[]>() {
+		@Override
+		protected int[] initialValue() {
+			return new int[queueMask+1];
+		}
+	};
+	private static final int[] dx = {1,0,-1,0};
+	private static final int[] dy = {0,1,0,-1};
+	
+	//tile classes, the low 4 bits of a room tile hold its Room card index + 1, walls are 0
+	public static final int TILE_WALL = 0;
+	public static final int TILE_ROOM = 0x0F;
+	public static final int TILE_CORRIDOR = 0x10;
+	public static final int TILE_DOOR = 0x20;
+	public static final int TILE_PASSAGE = 0x40;
+	public static final int TILE_START = 0x80;
+	//board characters for each room, in the same order as the Room cards
+	private static final String roomChars = "KDRHSLPCB";
+	private static final String[] roomLocs = roomLocs();
+	//the two secret passages, as pairs of co-ords
+	private static final int[][] passageLinks = {{5,1,24,21},{23,5,0,19}};
 	
 	public Board(List<Player> players) {
+		this(players, new SplittableRandom());
+	}
+	
+	/**
+	 * Create a board, placing the weapons using the given random stream.
+	 * @param players
+	 * @param random
+	 */
+	public Board(List<Player> players, SplittableRandom random) {
 		this.players = players;
 		initialiseBoard();
-		addWeaponLocs();
+		for (Player p : players) {
+			p.setBoard(this);
+			playerMoved(p, -1, -1);
+		}
+		addWeaponLocs(random);
 	}
 	
 	/** 
@@ -56,18 +123,106 @@ public class Board {
 		brd[22]="RRRRRRR__HHHHHH__SSSSSSSS";
 		brd[23]="RRRRRRR__HHHHHH__SSSSSSSS";
 		brd[24]="RRRRRR#?#HHHHHH#_#SSSSSSS";
+		compileBoard();
+	}
+	
+	/**
+	 * Compile the board strings into the tile array, so movement checks
+	 * only need to read a byte and test its bits.
+	 */
+	private void compileBoard() {
+		for (int y=0; y<boardSize; y++) {
+			for (int x=0; x<boardSize; x++) {
+				tiles[y*boardSize+x] = (byte)tileOf(brd[y].charAt(x));
+			}
+		}
+		Arrays.fill(passages, -1);
+		for (int[] link : passageLinks) {
+			int a = link[1]*boardSize+link[0];
+			int b = link[3]*boardSize+link[2];
+			if ((tiles[a]&TILE_PASSAGE)==0 || (tiles[b]&TILE_PASSAGE)==0) {
+				throw new RuntimeException("Passage link does not join two passages");
+			}
+			passages[a] = b;
+			passages[b] = a;
+		}
+		compileSlots();
+	}
+	
+	/**
+	 * Find the tiles in each room that a token can be placed on, which are those not
+	 * next to a door or passage, so placed tokens never block them off.
+	 * Each room holds at most 64 so that its free slots fit in a long.
+	 */
+	private void compileSlots() {
+		int nRooms = roomChars.length();
+		int[][] slots = new int[nRooms][boardSize*boardSize];
+		int[] nSlots = new int[nRooms];
+		int blocking = TILE_DOOR|TILE_PASSAGE;
+		Arrays.fill(slotOf, (byte)-1);
+		for (int i=0; i<boardSize; i++) {
+			for (int j=0; j<boardSize; j++) {
+				int room = getRoom(i,j);
+				if (room<0) continue;
+				if ((getTile(i-1,j)&blocking)==0 && (getTile(i+1,j)&blocking)==0
+						&& (getTile(i,j-1)&blocking)==0 && (getTile(i,j+1)&blocking)==0) {
+					if (nSlots[room]==64) throw new RuntimeException("Too many slots in room " + room);
+					slotOf[j*boardSize+i] = (byte)nSlots[room];
+					slots[room][nSlots[room]++] = j*boardSize+i;
+				}
+			}
+		}
+		roomSlots = new int[nRooms][];
+		freeSlots = new long[nRooms];
+		for (int r=0; r<nRooms; r++) {
+			roomSlots[r] = Arrays.copyOf(slots[r], nSlots[r]);
+			freeSlots[r] = nSlots[r]==64 ? -1L : (1L<<nSlots[r])-1;
+		}
+	}
+	
+	/**
+	 * Given a character from the board strings, return its tile class.
+	 * @param c
+	 * @return
+	 */
+	private static int tileOf(char c) {
+		switch(c) {
+		case('_'): return TILE_CORRIDOR;
+		case('#'): return TILE_WALL;
+		case('d'): return TILE_DOOR;
+		case('s'): return TILE_PASSAGE;
+		case('?'): return TILE_START;
+		default:
+			int room = roomChars.indexOf(c);
+			if (room<0) throw new RuntimeException("Unknown board tile: " + c);
+			return room+1;
+		}
+	}
+	
+	/**
+	 * The name getLoc() gives each room, the Room card names in lower case.
+	 * @return
+	 */
+	private static String[] roomLocs() {
+		String[] rooms = Room.rooms();
+		for (int i=0; i<rooms.length; i++) {
+			rooms[i] = rooms[i].toLowerCase();
+		}
+		return rooms;
 	}
 	
 	/**
 	 * Add the WeaponLocs to the game and place them in random rooms.
+	 * @param random
 	 */
-	public void addWeaponLocs() {
+	public void addWeaponLocs(SplittableRandom random) {
 		String[] rooms = Room.rooms();
 		List<String> roomList = new ArrayList<String>();
 		for (String s : rooms) roomList.add(s);
-		Collections.shuffle(roomList);
+		Game.shuffle(roomList, random);
 		for (int i=0; i<nWeapons; i++) {
 			WeaponLoc weapon = new WeaponLoc(i);
+			weapon.setBoard(this);
 			weapons.add(weapon);
 			moveObj(weapon.getName(),roomList.get(i));
 		}
@@ -88,6 +243,53 @@ public class Board {
 		}
 	}
 	
+	/**
+	 * Draw the weapon and player, if any, at co-ordinates (x,y) on the graphics pane.
+	 * @param g
+	 * @param x
+	 * @param y
+	 * @param tileX
+	 * @param tileY
+	 */
+	public void drawTile(Graphics g, int x, int y, double tileX, double tileY) {
+		drawTile(g, x, y, tileX, tileY, null);
+	}
+	
+	/**
+	 * Draw the weapon and player, if any, at co-ordinates (x,y) on the graphics pane,
+	 * leaving out the given player, such as one being drawn elsewhere as they move.
+	 * @param g
+	 * @param x
+	 * @param y
+	 * @param tileX
+	 * @param tileY
+	 * @param hidden
+	 */
+	public void drawTile(Graphics g, int x, int y, double tileX, double tileY, Player hidden) {
+		if (!onBoard(x,y)) return;
+		int tile = y*boardSize+x;
+		if (weaponAt[tile]!=null) weaponAt[tile].drawSelf(g, tileX, tileY);
+		if (playerAt[tile]!=null && playerAt[tile]!=hidden) playerAt[tile].drawSelf(g, tileX, tileY);
+	}
+	
+	/**
+	 * Add the tiles whose tokens have changed since the last call to the given bitmap,
+	 * a bit for each tile index, and forget them. Returns false if none have changed.
+	 * @param into
+	 * @return
+	 */
+	public boolean drainDirtyTiles(long[] into) {
+		boolean any = false;
+		for (int i=0; i<dirtyBits.length; i++) {
+			if (dirtyBits[i]!=0) {
+				into[i] |= dirtyBits[i];
+				dirtyBits[i] = 0;
+				any = true;
+			}
+		}
+		return any;
+	}
+	
 	/**
 	 * Check if the given move by a player from co-ords (x1,y1) to (x2,y2) is valid.
 	 * @param x1
@@ -97,33 +299,72 @@ public class Board {
 	 * @return
 	 */
 	public boolean isValidMove(int x1, int y1, int x2, int y2) {
-		String loc1 = getLoc(x1,y1);
-		String loc2 = getLoc(x2,y2);
 		//location not on map
-		if (loc1==null || loc2==null) return false; 
+		if (!onBoard(x1,y1) || !onBoard(x2,y2)) return false;
+		return isValidStep(y1*boardSize+x1, y2*boardSize+x2, true);
+	}
+	
+	/**
+	 * Check if a single step between the tiles at two indexes is valid,
+	 * optionally ignoring where the players are.
+	 * @param from
+	 * @param to
+	 * @param blockByPlayers
+	 * @return
+	 */
+	private boolean isValidStep(int from, int to, boolean blockByPlayers) {
+		int t1 = tiles[from]&0xFF;
+		int t2 = tiles[to]&0xFF;
 		//another player is already at location
-		for (Player p : players) {
-			if (p.isHere(x2, y2)) return false;
-		}
+		if (blockByPlayers && isSet(playerBits, to)) return false;
 		//note moving on top of WeaponLocs is allowed, as otherwise players might become blocked
 		//moving from door, start or corridor, to door or corridor is acceptable
-		if ((loc1.equals("corridor") || loc1.equals("door") || loc1.equals("start")) 
-				&& (loc2.equals("corridor")||loc2.equals("door"))) return true;
+		if ((t1&(TILE_CORRIDOR|TILE_DOOR|TILE_START))!=0 
+				&& (t2&(TILE_CORRIDOR|TILE_DOOR))!=0) return true;
 		//if moving to passage, must check other end of passage is also clear
-		if (loc2.equals("passage")&&!loc1.equals("passage")) {
-			int x3 = teleport(x2,y2)[0];
-			int y3 = teleport(x2,y2)[1];
-			for (Player p:players) {
-				if (p.isHere(x3, y3)) return false;
-			}
+		if (blockByPlayers && (t2&TILE_PASSAGE)!=0 && (t1&TILE_PASSAGE)==0) {
+			if (isSet(playerBits, passages[to])) return false;
 		}
 		//moving from door, room or passage, to door, room or passage is acceptable
-		if ((isRoom(x1,y1) || loc1.equals("door") || loc1.equals("passage")) 
-				&& (isRoom(x2,y2) || loc2.equals("door") || loc2.equals("passage"))) return true;
+		if ((t1&(TILE_ROOM|TILE_DOOR|TILE_PASSAGE))!=0 
+				&& (t2&(TILE_ROOM|TILE_DOOR|TILE_PASSAGE))!=0) return true;
 		//any other move is illegal
 		return false;
 	}
 	
+	/**
+	 * Return if co-ordinates (x,y) lie on the board.
+	 * @param x
+	 * @param y
+	 * @return
+	 */
+	public boolean onBoard(int x, int y) {
+		return x>=0 && y>=0 && x<boardSize && y<boardSize;
+	}
+	
+	/**
+	 * Given co-ordinates (x,y), return the tile class at that location as TILE_ flags,
+	 * with the low bits holding the room for room tiles. Off the board is a wall.
+	 * @param x
+	 * @param y
+	 * @return
+	 */
+	public int getTile(int x, int y) {
+		if (!onBoard(x,y)) return TILE_WALL;
+		return tiles[y*boardSize+x]&0xFF;
+	}
+	
+	/**
+	 * Given co-ordinates (x,y), return the index of the Room card for that location,
+	 * or -1 if it is not inside a room.
+	 * @param x
+	 * @param y
+	 * @return
+	 */
+	public int getRoom(int x, int y) {
+		return (getTile(x,y)&TILE_ROOM)-1;
+	}
+	
 	/**
 	 * Given co-ordinates (x,y), return as a string what tile is present at that location.
 	 * @param x
@@ -131,23 +372,15 @@ public class Board {
 	 * @return
 	 */
 	public String getLoc(int x, int y) {
-		if (x<0 || y<0 || y>24 || x>24) return "offscreen";
-		switch(brd[y].charAt(x)) {
-		case('_'): return "corridor";
-		case('#'): return "wall";
-		case('d'): return "door";
-		case('s'): return "passage";
-		case('?'): return "start";
-		
-		case('K'): return "kitchen";
-		case('D'): return "dining";
-		case('R'): return "lounge";
-		case('H'): return "hall";
-		case('S'): return "study";
-		case('L'): return "library";
-		case('P'): return "billiard";
-		case('C'): return "conservatory";
-		case('B'): return "ballroom";
+		if (!onBoard(x,y)) return "offscreen";
+		int tile = tiles[y*boardSize+x]&0xFF;
+		if ((tile&TILE_ROOM)!=0) return roomLocs[(tile&TILE_ROOM)-1];
+		switch(tile) {
+		case(TILE_CORRIDOR): return "corridor";
+		case(TILE_WALL): return "wall";
+		case(TILE_DOOR): return "door";
+		case(TILE_PASSAGE): return "passage";
+		case(TILE_START): return "start";
 		default: return null;
 		}
 	}
@@ -159,13 +392,7 @@ public class Board {
 	 * @return
 	 */
 	public boolean isRoom(int x, int y) {
-		String room = getLoc(x,y);
-		if (room==null) return false;
-		return (room.equals("kitchen") || room.equals("dining") 
-				||room.equals("lounge") || room.equals("hall") 
-				||room.equals("study") || room.equals("library") 
-				||room.equals("billiard") || room.equals("conservatory") 
-				||room.equals("ballroom") );
+		return (getTile(x,y)&TILE_ROOM)!=0;
 	}
 	
 	/**
@@ -176,24 +403,9 @@ public class Board {
 	 * @return
 	 */
 	public int[] teleport(int x, int y) {
-		if (!getLoc(x,y).equals("passage")) return null;
-		int[] loc = new int[2];
-		if (x==5 && y==1) {
-			loc[0] = 24;
-			loc[1] = 21;
-		} else if (x==24 && y==21) {
-			loc[0] = 5;
-			loc[1] = 1;
-		} else if (x==23 && y==5) {
-			loc[0] = 0;
-			loc[1] = 19;
-		} else if (x==0 && y==19) {
-			loc[0] = 23;
-			loc[1] = 5;
-		} else {
-			throw new RuntimeException(); //should never happen
-		}
-		return loc;
+		if ((getTile(x,y)&TILE_PASSAGE)==0) return null;
+		int end = passages[y*boardSize+x];
+		return new int[]{end%boardSize, end/boardSize};
 	}
 	
 	/**
@@ -201,10 +413,11 @@ public class Board {
 	 * @param character
 	 */
 	public void moveObj(String object, String room) {
+		int r = Room.valueOf(room).getIndex();
 		for (Player p : players) {
 			if (p.getName().equalsIgnoreCase(object)) {
-				if (!p.getLoc(this).equalsIgnoreCase(room)) {
-					int[] loc = getEmptySpaceInRoom(room);
+				if (getRoom(p.getX(),p.getY())!=r) {
+					int[] loc = getEmptySpaceInRoom(r);
 					p.movePlayer(loc[0], loc[1]);
 				}
 				return;
@@ -212,8 +425,8 @@ public class Board {
 		}
 		for (WeaponLoc w : weapons) {
 			if (w.getName().equalsIgnoreCase(object)) {
-				if (!w.getLoc(this).equalsIgnoreCase(room)) {
-					int[] loc = getEmptySpaceInRoom(room);
+				if (getRoom(w.getX(),w.getY())!=r) {
+					int[] loc = getEmptySpaceInRoom(r);
 					w.moveWeapon(loc[0], loc[1]);
 				}
 				return;
@@ -228,42 +441,28 @@ public class Board {
 	 * @return
 	 */
 	public int[] getEmptySpaceInRoom(String room) {
-		for (int i=0; i<24; i++) {
-			for (int j=0; j<24; j++) {
-				if (getLoc(i,j).equalsIgnoreCase(room)) {
-					boolean occupied = false;
-					//check if player is already at location
-					for (Player p : players) {
-						if (p.isHere(i, j)) {
-							occupied = true;
-						}
-					}
-					//check if weapon is already at location
-					for (WeaponLoc w : weapons) {
-						if (w.isHere(i, j)) {
-							occupied = true;
-						}
-					}
-					if (!occupied) {
-						//cannot move to a tile adjacent to a door or passage and block them
-						if (!getLoc(i-1,j).equals("passage")&&!getLoc(i-1,j).equals("door")
-								&&!getLoc(i+1,j).equals("passage")&&!getLoc(i+1,j).equals("door")
-								&&!getLoc(i,j-1).equals("passage")&&!getLoc(i,j-1).equals("door")
-								&&!getLoc(i,j+1).equals("passage")&&!getLoc(i,j+1).equals("door")) {
-							return new int[]{i,j};
-						}
-					}
-				}
-			}
-		}
+		return getEmptySpaceInRoom(Room.valueOf(room).getIndex());
+	}
+	
+	/**
+	 * Given the index of a Room card, find an empty tile to place an object in.
+	 * Can not place adjacent to doors or passages, to prevent blocking them off.
+	 * @param room
+	 * @return
+	 */
+	public int[] getEmptySpaceInRoom(int room) {
+		long free = freeSlots[room];
 		//should never happen
-		return null;
+		if (free==0) return null;
+		int tile = roomSlots[room][Long.numberOfTrailingZeros(free)];
+		return new int[]{tile%boardSize, tile/boardSize};
 	}
 	
 	/**
 	 * Given a player, a die roll and a location they want to move to, 
 	 * check if they can move there.
-	 * If so, move them.
+	 * If so, move them, and return the number of die moves used.
+	 * Returns -1 if the move is not possible.
 	 * @param p
 	 * @param x
 	 * @param y
@@ -271,55 +470,326 @@ public class Board {
 	 * @return
 	 */
 	public int movePlayer(Player p, int x, int y, int die) {
-		int depth = recursiveMove(p.getX(), p.getY(), x, y, die+1, moveCap);
-		if (depth>-1) {
+		if (!onBoard(x,y)) return -1;
+		int remaining = reachable(p, die)[y*boardSize+x];
+		if (remaining>-1) {
 			p.movePlayer(x,y);
-			if (die-depth==-1) return 0;
-			return die-depth;
+			return die-remaining;
 		}
 		return -1;
 	}
 	
 	/**
-	 * Recursively attempt to move a player from (x1,y1) to (x2,y2).
-	 * Can only move with the number of die moves remaining (depth).
-	 * Since movement within a room does not require movement,
-	 * the moves parameter hard-caps the depth of the recursion to prevent stack overflow.
+	 * Find every tile a player can reach from their current location with the given die roll.
+	 * Returns an array indexed by y*25+x, holding the number of die moves the player would
+	 * have remaining after moving to that tile, or -1 if it can not be reached.
+	 * The result is cached until the player, their location, the roll or another token changes,
+	 * so after a roll every click is a single lookup.
+	 * @param p
+	 * @param die
+	 * @return
+	 */
+	public int[] reachable(Player p, int die) {
+		int from = p.getY()*boardSize+p.getX();
+		if (p==reachPlayer && from==reachFrom && die==reachDie 
+				&& reachVersion==playerVersion) return reach;
+		search(from, die, true, reach, reachPrev);
+		for (int i=0; i<reach.length; i++) {
+			reach[i] = reach[i]==Integer.MAX_VALUE ? -1 : die-reach[i];
+		}
+		reachPlayer = p;
+		reachFrom = from;
+		reachDie = die;
+		reachVersion = playerVersion;
+		return reach;
+	}
+	
+	/**
+	 * Return the tiles, as indexes y*25+x, that a player would pass through moving to (x,y)
+	 * with the given die roll, starting with their own tile and ending with (x,y),
+	 * or null if they can not reach it. Call before the player moves.
+	 * @param p
+	 * @param x
+	 * @param y
+	 * @param die
+	 * @return
+	 */
+	public int[] pathTo(Player p, int x, int y, int die) {
+		if (!onBoard(x,y)) return null;
+		int to = y*boardSize+x;
+		if (reachable(p, die)[to]<0) return null;
+		int length = 0;
+		for (int tile=to; tile>=0; tile=reachPrev[tile]) length++;
+		int[] path = new int[length];
+		for (int tile=to; tile>=0; tile=reachPrev[tile]) path[--length] = tile;
+		return path;
+	}
+	
+	/**
+	 * Find the number of die moves needed to reach every tile from the tile at index from,
+	 * stopping at the given limit, and store them in cost, indexed by y*25+x.
+	 * Tiles that can not be reached are left as Integer.MAX_VALUE.
+	 * Moving onto a room tile is free, while every other tile costs one move, so the
+	 * search is a 0-1 breadth first search over the board.
+	 * If prev is given, it is filled with the tile each tile was reached from, so paths can be followed.
+	 * @param from
+	 * @param limit
+	 * @param blockByPlayers
+	 * @param cost
+	 * @param prev
+	 */
+	void search(int from, int limit, boolean blockByPlayers, int[] cost, int[] prev) {
+		Arrays.fill(cost, Integer.MAX_VALUE);
+		cost[from] = 0;
+		if (prev!=null) prev[from] = -1;
+		//circular deque, cheap tiles are pushed to the front and expensive ones to the back
+		int[] queue = queues.get();
+		int head = 0;
+		int tail = 0;
+		queue[tail++ & queueMask] = from;
+		while (head!=tail) {
+			int tile = queue[head++ & queueMask];
+			int x1 = tile%boardSize;
+			int y1 = tile/boardSize;
+			for (int dir=0; dir<5; dir++) {
+				int next;
+				if (dir<4) {
+					int x2 = x1+dx[dir];
+					int y2 = y1+dy[dir];
+					if (!onBoard(x2,y2)) continue;
+					next = y2*boardSize+x2;
+				} else {
+					next = passages[tile];
+					if (next<0) break;
+				}
+				if (!isValidStep(tile, next, blockByPlayers)) continue;
+				int step = (tiles[next]&TILE_ROOM)!=0 ? 0 : 1;
+				int c = cost[tile]+step;
+				if (c>limit || c>=cost[next]) continue;
+				cost[next] = c;
+				if (prev!=null) prev[next] = tile;
+				if (step==0) {
+					queue[--head & queueMask] = next;
+				} else {
+					queue[tail++ & queueMask] = next;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Return the fewest die moves needed to get from (x1,y1) to (x2,y2),
+	 * ignoring where other players are, or -1 if it can never be reached.
+	 * Answered from the precomputed DistanceTable.
 	 * @param x1
 	 * @param y1
 	 * @param x2
 	 * @param y2
-	 * @param depth
-	 * @param moves
 	 * @return
 	 */
-	private int recursiveMove(int x1, int y1, int x2, int y2, int depth, int moves) {
-		if (!isRoom(x1,y1)) depth--;
-		if (x1==x2 && y1==y2) {
-			return depth;
+	public int distance(int x1, int y1, int x2, int y2) {
+		if (!onBoard(x1,y1) || !onBoard(x2,y2)) return -1;
+		if (distances==null) distances = DistanceTable.forBoard(this);
+		return distances.distance(y1*boardSize+x1, y2*boardSize+x2);
+	}
+	
+	/**
+	 * Return the fewest die moves needed to get from (x,y) into the room with the
+	 * given Room card index, ignoring where other players are, or -1 if it can not be reached.
+	 * Walking within a room is free, so the distance to any one of its tiles will do.
+	 * @param x
+	 * @param y
+	 * @param room
+	 * @return
+	 */
+	public int distanceToRoom(int x, int y, int room) {
+		int tile = roomSlots[room][0];
+		return distance(x, y, tile%boardSize, tile/boardSize);
+	}
+	
+	/**
+	 * Return a hash of the board layout, including the secret passages,
+	 * which changes if the layout does.
+	 * @return
+	 */
+	public int layoutHash() {
+		CRC32 crc = new CRC32();
+		crc.update(tiles, 0, tiles.length);
+		for (int[] link : passageLinks) {
+			for (int i : link) crc.update(i);
 		}
-		if (depth<0||moves<=0) return -1;
-		moves--;
-		int maxDepth = -1;
-		if (isValidMove(x1,y1,x1+1,y1)) {
-			maxDepth = Math.max(maxDepth,recursiveMove(x1+1,y1,x2,y2, depth, moves));
+		return (int)crc.getValue();
+	}
+	
+	/**
+	 * Fill the given array with the tile index, y*25+x, of every token on the board:
+	 * the six characters by card index, then the six weapons by card index.
+	 * Characters not on the board are -1.
+	 * @param into
+	 */
+	public void getTokenTiles(int[] into) {
+		Arrays.fill(into, 0, nWeapons*2, -1); //as many characters as weapons
+		for (Player p : players) {
+			if (p.getUid()>=0) into[p.getUid()] = p.getY()*boardSize+p.getX();
 		}
-		if (isValidMove(x1,y1,x1,y1+1)) {
-			maxDepth = Math.max(maxDepth,recursiveMove(x1,y1+1,x2,y2, depth, moves));
+		for (int i=0; i<weapons.size(); i++) {
+			WeaponLoc w = weapons.get(i);
+			into[nWeapons+i] = w.getY()*boardSize+w.getX();
 		}
-		if (isValidMove(x1,y1,x1-1,y1)) {
-			maxDepth = Math.max(maxDepth,recursiveMove(x1-1,y1,x2,y2, depth, moves));
+	}
+	
+	/**
+	 * Return roughly how many bytes this board takes up, counting its arrays and tokens
+	 * but not the players or the shared distance table.
+	 * @return
+	 */
+	public long footprint() {
+		long bytes = 128; //the board itself
+		for (String row : brd) bytes += 40+row.length();
+		bytes += 16+4*brd.length;
+		bytes += 16+tiles.length + 16+4*passages.length + 16+slotOf.length + 16+8*freeSlots.length;
+		for (int[] slots : roomSlots) bytes += 16+4*slots.length;
+		bytes += 16+4*roomSlots.length;
+		bytes += 16+4*reach.length + 16+4*reachPrev.length;
+		bytes += 3*(16+8*playerBits.length) + 16+4*playerAt.length + 16+4*weaponAt.length;
+		bytes += 40+32*weapons.size();
+		return bytes;
+	}
+	
+	/**
+	 * Return the number of tiles on the board.
+	 * @return
+	 */
+	public int getTileCount() {
+		return boardSize*boardSize;
+	}
+	
+	/**
+	 * Update the occupancy of the board after a player moves from (oldX,oldY)
+	 * to their current location. Called by Player.movePlayer().
+	 * @param p
+	 * @param oldX
+	 * @param oldY
+	 */
+	void playerMoved(Player p, int oldX, int oldY) {
+		playerVersion++;
+		if (onBoard(oldX,oldY)) {
+			int old = oldY*boardSize+oldX;
+			set(dirtyBits, old);
+			if (playerAt[old]==p) {
+				playerAt[old] = null;
+				clear(playerBits, old);
+				//should never happen, but keep any other player sharing the tile
+				for (Player q : players) {
+					if (q!=p && q.isHere(oldX, oldY)) {
+						playerAt[old] = q;
+						set(playerBits, old);
+					}
+				}
+				updateSlot(old);
+			}
 		}
-		if (isValidMove(x1,y1,x1,y1-1)) {
-			maxDepth = Math.max(maxDepth,recursiveMove(x1,y1-1,x2,y2, depth, moves));
+		if (onBoard(p.getX(),p.getY())) {
+			int tile = p.getY()*boardSize+p.getX();
+			set(dirtyBits, tile);
+			playerAt[tile] = p;
+			set(playerBits, tile);
+			updateSlot(tile);
 		}
-		if (getLoc(x1,y1).equals("passage")) {
-			int[] tele = teleport(x1,y1);
-			if (isValidMove(x1,y1,tele[0],tele[1])) {
-				maxDepth = Math.max(maxDepth,recursiveMove(tele[0],tele[1],x2,y2, depth, moves));
+	}
+	
+	/**
+	 * Update the occupancy of the board after a weapon moves from (oldX,oldY)
+	 * to its current location. Called by WeaponLoc.moveWeapon().
+	 * @param w
+	 * @param oldX
+	 * @param oldY
+	 */
+	void weaponMoved(WeaponLoc w, int oldX, int oldY) {
+		if (onBoard(oldX,oldY)) {
+			int old = oldY*boardSize+oldX;
+			set(dirtyBits, old);
+			if (weaponAt[old]==w) {
+				weaponAt[old] = null;
+				clear(weaponBits, old);
+				for (WeaponLoc v : weapons) {
+					if (v!=w && v.isHere(oldX, oldY)) {
+						weaponAt[old] = v;
+						set(weaponBits, old);
+					}
+				}
+				updateSlot(old);
 			}
 		}
-		return maxDepth;
+		if (onBoard(w.getX(),w.getY())) {
+			int tile = w.getY()*boardSize+w.getX();
+			set(dirtyBits, tile);
+			weaponAt[tile] = w;
+			set(weaponBits, tile);
+			updateSlot(tile);
+		}
+	}
+	
+	/**
+	 * Mark the room slot at a tile, if there is one, as free or not,
+	 * after a token moves onto or off it.
+	 * @param tile
+	 */
+	private void updateSlot(int tile) {
+		int slot = slotOf[tile];
+		if (slot<0) return;
+		int room = (tiles[tile]&TILE_ROOM)-1;
+		if (isSet(playerBits, tile) || isSet(weaponBits, tile)) {
+			freeSlots[room] &= ~(1L<<slot);
+		} else {
+			freeSlots[room] |= 1L<<slot;
+		}
+	}
+	
+	/**
+	 * Return the player at co-ordinates (x,y), or null if there is none.
+	 * @param x
+	 * @param y
+	 * @return
+	 */
+	public Player getPlayerAt(int x, int y) {
+		if (!onBoard(x,y)) return null;
+		return playerAt[y*boardSize+x];
+	}
+	
+	/**
+	 * Return the weapon at co-ordinates (x,y), or null if there is none.
+	 * @param x
+	 * @param y
+	 * @return
+	 */
+	public WeaponLoc getWeaponAt(int x, int y) {
+		if (!onBoard(x,y)) return null;
+		return weaponAt[y*boardSize+x];
+	}
+	
+	/**
+	 * Return if a player or weapon is at co-ordinates (x,y).
+	 * @param x
+	 * @param y
+	 * @return
+	 */
+	public boolean isOccupied(int x, int y) {
+		if (!onBoard(x,y)) return false;
+		int tile = y*boardSize+x;
+		return isSet(playerBits, tile) || isSet(weaponBits, tile);
+	}
+	
+	private static boolean isSet(long[] bits, int i) {
+		return (bits[i>>6]&(1L<<i))!=0;
+	}
+	
+	private static void set(long[] bits, int i) {
+		bits[i>>6] |= 1L<<i;
+	}
+	
+	private static void clear(long[] bits, int i) {
+		bits[i>>6] &= ~(1L<<i);
 	}
 	
 	/**
@@ -329,18 +799,16 @@ public class Board {
 	 * @return
 	 */
 	public String hover(int x, int y) {
-		for (Player p : players) {
-			if (p.isHere(x, y)) {
-				if (p.isPlaying()) {
-					return "Player " + p.getPlayerName() + " ("+p.getName()+")";
-				} else {
-					return "Player " + p.getName();
-				}
+		Player p = getPlayerAt(x, y);
+		if (p!=null) {
+			if (p.isPlaying()) {
+				return "Player " + p.getPlayerName() + " ("+p.getName()+")";
+			} else {
+				return "Player " + p.getName();
 			}
 		}
-		for (WeaponLoc w : weapons) {
-			if (w.isHere(x,y)) return "Weapon " + w.getName();
-		}
+		WeaponLoc w = getWeaponAt(x, y);
+		if (w!=null) return "Weapon " + w.getName();
 		return getLoc(x,y);
 	}
 	
@@ -1,15 +1,19 @@
 import java.awt.Canvas;
 import java.awt.Color;
 import java.awt.Graphics;
+import java.awt.GraphicsConfiguration;
 import java.awt.Image;
 import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.event.MouseMotionListener;
-import java.io.File;
-import java.io.IOException;
+import java.util.Arrays;
 
-import javax.imageio.ImageIO;
+import javax.swing.Timer;
 
 
 /**
@@ -17,6 +21,11 @@ import javax.imageio.ImageIO;
  * Draws the board, checks for mouse clicks and movements,
  * and then moves the player and updates the hover text appropriately.
  * Can be scaled.
+ * The board is drawn into a back-buffer kept between paints, over a copy of the background
+ * scaled once per scale, and after the first paint only the tiles whose tokens have changed
+ * are redrawn, so painting an unchanged board just copies the buffer to the screen.
+ * A player's move is animated along the path they took, by a timer on the event thread
+ * that redraws just the tiles under the moving counter each frame.
  * @author Edwin
  *
  */
@@ -25,9 +34,8 @@ public class BoardCanvas extends Canvas implements MouseListener, MouseMotionLis
 	private Board board;
 	private GUI gui;
 
-	private static final String IMAGE_PATH = "resources/";
 	private static final String boardName = "board.jpg";
-	private static final Image brd = loadImage(boardName);
+	private static final Image brd = ImageCache.get(boardName);
 	
 	private int tileX = 36;
 	private int tileY = 36;
@@ -37,6 +45,33 @@ public class BoardCanvas extends Canvas implements MouseListener, MouseMotionLis
 	
 	private int clickX;
 	private int clickY;
+	private int highlight = -1; //index of the outlined tile, the last one clicked
+	//the tile last hovered over and what was on it, so the text is only rebuilt when they change
+	private int hoverTile = -1;
+	private Player hoverPlayer;
+	private WeaponLoc hoverWeapon;
+	
+	private VolatileImage buffer; //the board as last drawn
+	private Image background; //board.jpg at the current scale
+	private boolean redrawAll = true; //if the whole buffer must be redrawn
+	private static boolean firstPaint = true;
+	//tiles to redraw on the next paint, a bit for each tile index
+	private long[] dirty = new long[(nTiles+63)/64];
+	private static final int nTiles = 25*25;
+	
+	//the player being animated, drawn at (animX,animY) rather than at their location
+	private Player animating;
+	private int[] path; //the tiles they pass through
+	private long animationStart;
+	private int animX;
+	private int animY;
+	private static final int frameDelay = 16; //about 60 frames a second
+	private static final int stepMillis = 80; //time to move one tile
+	private Timer animationTimer = new Timer(frameDelay, new ActionListener() {
+		public void actionPerformed(ActionEvent e) {
+			animationFrame();
+		}
+	});
 	
 	public BoardCanvas(Board board, GUI gui) {
 		setSize((int)(scale*brdSize),(int)(scale*brdSize));
@@ -47,27 +82,226 @@ public class BoardCanvas extends Canvas implements MouseListener, MouseMotionLis
 	}
 	
 	/**
-	 * Draw the Graphics pane.
+	 * Paint without clearing first, as the buffer covers the whole canvas.
+	 */
+	public void update(Graphics g) {
+		paint(g);
+	}
+	
+	/**
+	 * Draw the Graphics pane, bringing the back-buffer up to date and copying it to the screen.
 	 */
 	public void paint(Graphics g) {
-		Image offsc = createImage((int)(scale*brdSize),(int)(scale*brdSize));
-		Graphics tmp = offsc.getGraphics();
-		tmp.drawImage(brd, 0, 0, (int)(brd.getWidth(null)*scale), 
-				(int)(brd.getHeight(null)*scale), null);
-		
-		board.drawItems(tmp, scale*tileX, scale*tileY);
-		tmp.setColor(Color.black);
-		
-		for (int i=0; i<25; i++) {
-			for (int j=0; j<25; j++) {
-				Rectangle rect = new Rectangle((int)(tileX*i*scale), (int)(tileY*j*scale), 
-						(int)(tileX*scale), (int)(tileY*scale));
-				if (clickX!=0 && rect.contains(clickX,clickY)) {
-					tmp.drawRect(rect.x, rect.y, rect.width, rect.height);
+		if (firstPaint) {
+			firstPaint = false;
+			ImageCache.logTiming("First board frame");
+		}
+		do {
+			validateBuffer();
+			Graphics tmp = buffer.getGraphics();
+			if (redrawAll) {
+				drawAll(tmp);
+			} else {
+				drawDirty(tmp);
+			}
+			tmp.dispose();
+			g.drawImage(buffer,0,0,this);
+		} while (buffer.contentsLost());
+	}
+	
+	/**
+	 * Make sure the buffer exists, is the size of the board and has kept its contents,
+	 * otherwise create or restore it and mark it for a full redraw.
+	 */
+	private void validateBuffer() {
+		int size = (int)(scale*brdSize);
+		GraphicsConfiguration gc = getGraphicsConfiguration();
+		int state = buffer==null ? VolatileImage.IMAGE_INCOMPATIBLE : buffer.validate(gc);
+		if (state==VolatileImage.IMAGE_INCOMPATIBLE || buffer.getWidth()!=size || buffer.getHeight()!=size) {
+			if (buffer!=null) buffer.flush();
+			buffer = createVolatileImage(size, size);
+			redrawAll = true;
+		} else if (state==VolatileImage.IMAGE_RESTORED) {
+			redrawAll = true;
+		}
+		if (background==null) {
+			background = scaleBackground(scale/defaultScale);
+		}
+	}
+	
+	/**
+	 * Redraw the whole board into the buffer.
+	 * @param g
+	 */
+	private void drawAll(Graphics g) {
+		board.drainDirtyTiles(dirty);
+		Arrays.fill(dirty, 0);
+		g.drawImage(background, 0, 0, null);
+		for (int j=0; j<25; j++) {
+			for (int i=0; i<25; i++) {
+				board.drawTile(g, i, j, scale*tileX, scale*tileY, animating);
+			}
+		}
+		drawHighlight(g);
+		drawAnimating(g);
+		redrawAll = false;
+	}
+	
+	/**
+	 * Redraw just the tiles that have changed since the last paint.
+	 * Each tile is redrawn clipped to itself, along with its neighbours' tokens
+	 * as their outlines can overlap its edge.
+	 * @param g
+	 */
+	private void drawDirty(Graphics g) {
+		board.drainDirtyTiles(dirty);
+		for (int w=0; w<dirty.length; w++) {
+			for (long bits=dirty[w]; bits!=0; bits &= bits-1) {
+				int tile = (w<<6)+Long.numberOfTrailingZeros(bits);
+				int x = tile%25;
+				int y = tile/25;
+				Rectangle rect = tileRect(x, y);
+				g.setClip(rect.x, rect.y, rect.width+1, rect.height+1);
+				g.drawImage(background, 0, 0, null);
+				for (int j=y-1; j<=y+1; j++) {
+					for (int i=x-1; i<=x+1; i++) {
+						board.drawTile(g, i, j, scale*tileX, scale*tileY, animating);
+					}
 				}
+				if (tile==highlight) drawHighlight(g);
+				drawAnimating(g);
+			}
+			dirty[w] = 0;
+		}
+		g.setClip(null);
+	}
+	
+	/**
+	 * Outline the last clicked tile.
+	 * @param g
+	 */
+	private void drawHighlight(Graphics g) {
+		if (highlight<0) return;
+		Rectangle rect = tileRect(highlight%25, highlight/25);
+		g.setColor(Color.black);
+		g.drawRect(rect.x, rect.y, rect.width, rect.height);
+	}
+	
+	/**
+	 * Draw the player being animated, if any, at their current point along their path.
+	 * @param g
+	 */
+	private void drawAnimating(Graphics g) {
+		if (animating==null) return;
+		SpriteAtlas.forTile(scale*tileX, scale*tileY).drawCharacter(g, animating.getUid(), animX, animY);
+	}
+	
+	/**
+	 * Start animating a player's move along the given path of tile indexes,
+	 * finishing any animation still running first.
+	 * The player should already be at the end of the path.
+	 * @param p
+	 * @param path
+	 */
+	public void animate(Player p, int[] path) {
+		if (animating!=null) finishAnimation();
+		if (path==null || path.length<2) return;
+		animating = p;
+		this.path = path;
+		animationStart = System.nanoTime();
+		animX = (int)(tileX*scale*(path[0]%25));
+		animY = (int)(tileY*scale*(path[0]/25));
+		markAnimating();
+		animationTimer.start();
+	}
+	
+	/**
+	 * Move the animated player on to where they should be now, and redraw the tiles they were and are over.
+	 * Steps between tiles that are not next to each other, through secret passages, are jumped halfway.
+	 */
+	private void animationFrame() {
+		double t = (System.nanoTime()-animationStart)/1e6/stepMillis;
+		int step = (int)t;
+		if (step>=path.length-1) {
+			finishAnimation();
+			return;
+		}
+		int from = path[step];
+		int to = path[step+1];
+		double frac = t-step;
+		double x;
+		double y;
+		if (Math.abs(from%25-to%25)+Math.abs(from/25-to/25)==1) {
+			x = from%25+(to%25-from%25)*frac;
+			y = from/25+(to/25-from/25)*frac;
+		} else {
+			int tile = frac<0.5 ? from : to;
+			x = tile%25;
+			y = tile/25;
+		}
+		int oldX = animX;
+		int oldY = animY;
+		animX = (int)(tileX*scale*x);
+		animY = (int)(tileY*scale*y);
+		if (animX==oldX && animY==oldY) return;
+		markAnimating(oldX, oldY);
+		markAnimating();
+	}
+	
+	/**
+	 * Stop animating, drawing the player back at their location.
+	 */
+	private void finishAnimation() {
+		animationTimer.stop();
+		markAnimating();
+		animating = null;
+		markDirty(path[path.length-1]);
+		repaint();
+	}
+	
+	/**
+	 * Mark the tiles under the animated counter to be redrawn, and repaint them.
+	 */
+	private void markAnimating() {
+		markAnimating(animX, animY);
+	}
+	
+	/**
+	 * Mark the tiles under a counter drawn at (x,y) to be redrawn, and repaint them.
+	 * @param x
+	 * @param y
+	 */
+	private void markAnimating(int x, int y) {
+		int width = (int)(tileX*scale);
+		int height = (int)(tileY*scale);
+		int first = tileAt(Math.max(0, x), Math.max(0, y));
+		int last = tileAt(Math.min(x+width, getWidth()-1), Math.min(y+height, getHeight()-1));
+		if (first<0 || last<0) return;
+		for (int j=first/25; j<=last/25; j++) {
+			for (int i=first%25; i<=last%25; i++) {
+				markDirty(j*25+i);
 			}
 		}
-		g.drawImage(offsc,0,0,this);
+		repaint(x, y, width+2, height+2);
+	}
+	
+	/**
+	 * Return the area of the canvas covered by the tile at (x,y).
+	 * @param x
+	 * @param y
+	 * @return
+	 */
+	private Rectangle tileRect(int x, int y) {
+		return new Rectangle((int)(tileX*x*scale), (int)(tileY*y*scale), 
+				(int)(tileX*scale), (int)(tileY*scale));
+	}
+	
+	/**
+	 * Mark a tile to be redrawn on the next paint.
+	 * @param tile
+	 */
+	private void markDirty(int tile) {
+		if (tile>=0) dirty[tile>>6] |= 1L<<tile;
 	}
 	
 	/**
@@ -75,57 +309,39 @@ public class BoardCanvas extends Canvas implements MouseListener, MouseMotionLis
 	 * @param newScale
 	 */
 	public void scale(double newScale) {
+		scale(newScale, null);
+	}
+	
+	/**
+	 * Rescale the board, using a background already scaled by scaleBackground(newScale),
+	 * or null to scale it when next painted.
+	 * @param newScale
+	 * @param background
+	 */
+	public void scale(double newScale, Image background) {
+		if (animating!=null) finishAnimation();
 		scale = defaultScale * newScale;
+		this.background = background;
+		redrawAll = true;
 		setSize((int)(scale*brdSize),(int)(scale*brdSize));
 		repaint();
 	}
 	
-	//I had plans to animate the movement of the players, but this failed disastrously.
-	/*private void animate(Player p, int x, int y) {
-		animateX = x;
-		animateY = y;
-		int pX = p.getX();
-		int pY = p.getY();
-		while (animateX!=pX || animateY!= pY) {
-			if (animateX<pX) {
-				animateX++;
-			} else if (animateX>pX) {
-				animateX--;
-			}
-			if (animateY<pY) {
-				animateY++;
-			} else if (animateY>pY) {
-				animateY--;
-			}
-			p.movePlayer(animateX,animateY);
-			repaint((int)(animateX*tileX*scale),(int)(animateY*tileY*scale),
-					(int)(tileX*scale),(int)(tileY*scale));
-			try {
-				Thread.sleep(1000);
-			} catch (InterruptedException e) {
-				e.printStackTrace();
-			}
-		}
-		animateX = -1;
-	}*/
-	
-
-
 	/**
-	 * Load an image from the file system, using a given filename.
-	 * 
-	 * @param filename
+	 * Return the board's background image for the given GUI scale.
+	 * Does not touch the canvas, so it can be called from any thread.
+	 * @param newScale
 	 * @return
 	 */
-	public static Image loadImage(String filename) {
-		Image img;
-		try {
-			File file = new File(IMAGE_PATH+filename);
-			img = ImageIO.read(file);
-		} catch (IOException e) {
-			throw new RuntimeException("Unable to load image: " + filename);
-		}
-		return img;
+	public static Image scaleBackground(double newScale) {
+		double scale = defaultScale * newScale;
+		int size = (int)(scale*brdSize);
+		BufferedImage background = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+		Graphics bg = background.getGraphics();
+		bg.drawImage(brd, 0, 0, (int)(brd.getWidth(null)*scale), 
+				(int)(brd.getHeight(null)*scale), null);
+		bg.dispose();
+		return background;
 	}
 
 	@Override
@@ -147,30 +363,34 @@ public class BoardCanvas extends Canvas implements MouseListener, MouseMotionLis
 	public void mousePressed(MouseEvent e) {
 		clickX = e.getX();
 		clickY = e.getY();
-		int x = -1;
-		int y = 0;
-		for (int i=0; i<25; i++) {
-			for (int j=0; j<25; j++) {
-				Rectangle rect = new Rectangle((int)(tileX*i*scale), (int)(tileY*j*scale), 
-						(int)(tileX*scale), (int)(tileY*scale));
-				if (rect.contains(clickX,clickY)) {
-					x = i;
-					y = j;
-				}
-			}
-		}
-		if (x!=-1) {
-			//animate code, non-working
-			/*int initX = gui.getTurn().getX();
-			int initY = gui.getTurn().getY();*/
-			int moves = board.movePlayer(gui.getTurn(), x, y, gui.getDie());
-			/*if (moves>-1) {
-				animate(gui.getTurn(),initX,initY);
-			}*/
+		Player turn = gui.getTurn();
+		if (turn==null) return; //no turn is on screen yet, or it has ended
+		int tile = tileAt(clickX, clickY);
+		if (tile>=0) {
+			markDirty(highlight);
+			highlight = tile;
+			markDirty(highlight);
+			int[] path = board.pathTo(turn, tile%25, tile/25, gui.getDie());
+			int moves = board.movePlayer(turn, tile%25, tile/25, gui.getDie());
 			gui.tryMove(moves);
+			if (moves>-1) animate(turn, path);
 			repaint();
 		}
 	}
+	
+	/**
+	 * Return the index of the tile under the point (x,y) on the canvas, or -1 if it is off the board.
+	 * @param x
+	 * @param y
+	 * @return
+	 */
+	private int tileAt(int x, int y) {
+		if (x<0 || y<0) return -1;
+		int i = (int)(x/(tileX*scale));
+		int j = (int)(y/(tileY*scale));
+		if (i>=25 || j>=25) return -1;
+		return j*25+i;
+	}
 
 	@Override
 	public void mouseReleased(MouseEvent e) {
@@ -182,22 +402,22 @@ public class BoardCanvas extends Canvas implements MouseListener, MouseMotionLis
 	}
 
 	/**
-	 * When the user moves the mouse, find the appropriate tile and update hover text.
+	 * When the user moves the mouse, find the appropriate tile and update hover text,
+	 * if the tile or what is on it has changed since the last move.
 	 */
 	@Override
 	public void mouseMoved(MouseEvent arg0) {
-		int x = arg0.getX();
-		int y = arg0.getY();
-		for (int i = 0; i < 25; i++) {
-			for (int j = 0; j < 25; j++) {
-				Rectangle rect = new Rectangle((int) (tileX * i * scale),
-						(int) (tileY * j * scale), (int) (tileX * scale),
-						(int) (tileY * scale));
-				if (rect.contains(x, y)) {
-					gui.hover(board.hover(i, j));
-				}
-			}
-		}
+		int tile = tileAt(arg0.getX(), arg0.getY());
+		if (tile<0) return;
+		int x = tile%25;
+		int y = tile/25;
+		Player p = board.getPlayerAt(x, y);
+		WeaponLoc w = board.getWeaponAt(x, y);
+		if (tile==hoverTile && p==hoverPlayer && w==hoverWeapon) return;
+		hoverTile = tile;
+		hoverPlayer = p;
+		hoverWeapon = w;
+		gui.hover(board.hover(x, y));
 	}
 	
 }
@@ -0,0 +1,181 @@
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.imageio.ImageIO;
+
+
+/**
+ * The BoardRenderer draws a board, with its players and weapons, into an image of a given size
+ * without any display, so board snapshots can be made under java.awt.headless=true.
+ * The background is scaled once per renderer, and each thread draws into its own image,
+ * reused for every board it renders.
+ * Run as a program, it plays games between bots in parallel and writes each final board as a PNG.
+ * Usage: BoardRenderer [games] [players] [seed] [output folder] [size]
+ * @author Edwin
+ *
+ */
+public class BoardRenderer {
+
+	private static final int boardSize = 25;
+	//games below this many are rendered in one task rather than split further
+	private static final int batchSize = 16;
+
+	private final int size;
+	private final double tile; //size of a tile in pixels
+	private final BufferedImage background;
+	private final ThreadLocal<BufferedImage> buffers = new ThreadLocal<BufferedImage>() {
+		@Override
+		protected BufferedImage initialValue() {
+			return new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+		}
+	};
+
+	/**
+	 * Create a renderer for square images of the given width and height in pixels.
+	 * @param size
+	 */
+	public BoardRenderer(int size) {
+		this.size = size;
+		tile = (double)size/boardSize;
+		background = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+		Image brd = ImageCache.get("board.jpg");
+		Graphics2D g = background.createGraphics();
+		g.drawImage(brd, 0, 0, size, size, null);
+		g.dispose();
+	}
+
+	/**
+	 * Draw the board into this thread's image and return it.
+	 * The image is overwritten by the thread's next render, so copy or write it out first.
+	 * @param board
+	 * @return
+	 */
+	public BufferedImage render(Board board) {
+		BufferedImage image = buffers.get();
+		Graphics2D g = image.createGraphics();
+		g.drawImage(background, 0, 0, null);
+		for (int y=0; y<boardSize; y++) {
+			for (int x=0; x<boardSize; x++) {
+				board.drawTile(g, x, y, tile, tile);
+			}
+		}
+		g.dispose();
+		return image;
+	}
+
+	/**
+	 * Render the board and write it as a PNG to the given stream.
+	 * @param board
+	 * @param out
+	 * @throws IOException
+	 */
+	public void writePng(Board board, OutputStream out) throws IOException {
+		if (!ImageIO.write(render(board), "png", out)) {
+			throw new IOException("No PNG writer available");
+		}
+	}
+
+	/**
+	 * Render the board and write it as a PNG file.
+	 * @param board
+	 * @param file
+	 */
+	public void writePng(Board board, File file) {
+		try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+			writePng(board, out);
+		} catch (IOException e) {
+			throw new RuntimeException("Unable to write image: " + file, e);
+		}
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	public static void main(String[] args) {
+		int games = args.length>0 ? Integer.parseInt(args[0]) : 1000;
+		int nPlayers = args.length>1 ? Integer.parseInt(args[1]) : 6;
+		long seed = args.length>2 ? Long.parseLong(args[2]) : System.nanoTime();
+		File dir = new File(args.length>3 ? args[3] : "snapshots");
+		int size = args.length>4 ? Integer.parseInt(args[4]) : 256;
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new RuntimeException("Unable to create folder: " + dir);
+		}
+		DistanceTable.preload();
+		long start = System.nanoTime();
+		long written = renderGames(games, nPlayers, seed, new BoardRenderer(size), dir, ForkJoinPool.commonPool());
+		double seconds = (System.nanoTime()-start)/1e9;
+		System.out.println("Seed " + seed + ", wrote " + written + " " + size + "px snapshots to " + dir);
+		System.out.printf("%.0f snapshots/min%n", written/seconds*60);
+	}
+
+	/**
+	 * Play the given number of games between bots on the given pool, as the Simulator does,
+	 * and write each one's final board to the folder as game-n.png.
+	 * Returns the number of images written.
+	 * @param games
+	 * @param nPlayers
+	 * @param seed
+	 * @param renderer
+	 * @param dir
+	 * @param pool
+	 * @return
+	 */
+	public static long renderGames(int games, int nPlayers, long seed, BoardRenderer renderer, File dir,
+			ForkJoinPool pool) {
+		AtomicLong written = new AtomicLong();
+		pool.invoke(new Batch(0, games, nPlayers, seed, renderer, dir, written));
+		return written.get();
+	}
+
+	/**
+	 * Plays and renders a range of games, splitting it in half until it is small enough to do directly.
+	 */
+	private static class Batch extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private int from;
+		private int to;
+		private int nPlayers;
+		private long seed;
+		private BoardRenderer renderer;
+		private File dir;
+		private AtomicLong written;
+
+		Batch(int from, int to, int nPlayers, long seed, BoardRenderer renderer, File dir, AtomicLong written) {
+			this.from = from;
+			this.to = to;
+			this.nPlayers = nPlayers;
+			this.seed = seed;
+			this.renderer = renderer;
+			this.dir = dir;
+			this.written = written;
+		}
+
+		@Override
+		protected void compute() {
+			if (to-from<=batchSize) {
+				Simulator.Results results = new Simulator.Results();
+				for (int i=from; i<to; i++) {
+					Game game = Simulator.play(nPlayers, Simulator.seedFor(seed, i), results);
+					renderer.writePng(game.board, new File(dir, "game-" + i + ".png"));
+					written.incrementAndGet();
+				}
+				return;
+			}
+			int mid = (from+to)>>>1;
+			invokeAll(new Batch(from, mid, nPlayers, seed, renderer, dir, written),
+					new Batch(mid, to, nPlayers, seed, renderer, dir, written));
+		}
+	}
+}
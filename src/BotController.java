@@ -0,0 +1,155 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+
+/**
+ * The BotController plays every player in a game itself, with no display or user input,
+ * so whole games can be run headless.
+ * Each bot heads for a room its notebook has not ruled out, suggests cards that might be in the envelope,
+ * and accuses once its notebook has deduced the envelope.
+ * @author Edwin
+ *
+ */
+public class BotController implements Controller {
+	
+	private int nPlayers;
+	private SplittableRandom random;
+	private Game game;
+	private int turns = 0;
+	//after this many turns each, bots accuse with what they have, so games always end
+	private static final int maxTurns = 200;
+	private static final int nChars = 6;
+	
+	/**
+	 * Create bots for the given number of players, who make their choices, 
+	 * including which characters they play, using the given random stream.
+	 * @param nPlayers
+	 * @param random
+	 */
+	public BotController(int nPlayers, SplittableRandom random) {
+		this.nPlayers = nPlayers;
+		this.random = random;
+	}
+	
+	/**
+	 * Create one bot for each player, each playing a randomly chosen character,
+	 * and non-playing players for the remaining characters.
+	 */
+	@Override
+	public List<Player> initialisePlayers() {
+		List<Integer> chars = new ArrayList<Integer>();
+		for (int i=0; i<nChars; i++) chars.add(i);
+		Game.shuffle(chars, random);
+		List<Player> players = new ArrayList<Player>();
+		for (int i=0; i<nChars; i++) {
+			if (i<nPlayers) {
+				players.add(new Player(chars.get(i), "Bot " + (i+1)));
+			} else {
+				players.add(new Player(chars.get(i)));
+			}
+		}
+		return players;
+	}
+
+	@Override
+	public void startGame(Game game) {
+		this.game = game;
+	}
+
+	/**
+	 * Play a bot's whole turn, then end it.
+	 */
+	@Override
+	public void takeTurn(Player p, int die) {
+		turns++;
+		if (!p.isEliminated()) {
+			playTurn(p, die);
+		}
+		game.endTurn(p);
+	}
+
+	@Override
+	public void endGame(Player winner) {
+	}
+	
+	/**
+	 * Return the number of turns played so far.
+	 * @return
+	 */
+	public int getTurns() {
+		return turns;
+	}
+	
+	/**
+	 * Move towards an unknown room, suggest if in a room, and accuse if the answer is known.
+	 * @param p
+	 * @param die
+	 */
+	private void playTurn(Player p, int die) {
+		if (tryAccuse(p)) return;
+		Board board = game.board;
+		int current = board.getRoom(p.getX(), p.getY());
+		int targets = unknown(p)&CardSet.ROOMS;
+		//look for somewhere new, unless this is the only room left
+		if (current>=0 && CardSet.size(targets)>1) targets &= ~(1<<(CardSet.ROOM_BASE+current));
+		int[] reach = board.reachable(p, die);
+		int best = -1;
+		int bestDistance = Integer.MAX_VALUE;
+		for (int tile=0; tile<reach.length; tile++) {
+			if (reach[tile]<0) continue;
+			int distance = Integer.MAX_VALUE;
+			for (int rooms=targets; rooms!=0; rooms &= rooms-1) {
+				int room = Integer.numberOfTrailingZeros(rooms)-CardSet.ROOM_BASE;
+				int d = board.distanceToRoom(tile%25, tile/25, room);
+				if (d>=0) distance = Math.min(distance, d);
+			}
+			if (distance<bestDistance || (distance==bestDistance && random.nextBoolean())) {
+				best = tile;
+				bestDistance = distance;
+			}
+		}
+		if (best>=0) board.movePlayer(p, best%25, best/25, die);
+		if (board.isRoom(p.getX(), p.getY())) {
+			int unknown = unknown(p);
+			Card weapon = CardSet.card(CardSet.random(unknown&CardSet.WEAPONS, random));
+			Card chara = CardSet.card(CardSet.random(unknown&CardSet.CHARACTERS, random));
+			game.suggest(p, weapon.toString(), chara.toString());
+			tryAccuse(p);
+		}
+	}
+	
+	/**
+	 * Accuse if only one of each kind of card is unknown, or with the most likely cards
+	 * if the game has gone on too long.
+	 * Returns true if an accusation was made.
+	 * @param p
+	 * @return
+	 */
+	private boolean tryAccuse(Player p) {
+		int unknown = unknown(p);
+		if (CardSet.size(unknown)!=3 && turns>maxTurns*nPlayers) {
+			//out of time, so guess the most likely envelope, in the pool running this game if there is one
+			ForkJoinPool pool = ForkJoinTask.inForkJoinPool() ? ForkJoinTask.getPool() : ForkJoinPool.commonPool();
+			unknown = new EnvelopeProbability(game.getNotebook(p), pool).getMostLikely();
+		}
+		if (CardSet.size(unknown)==3) {
+			game.accuse(p, (Room)CardSet.first(unknown&CardSet.ROOMS), 
+					(Character)CardSet.first(unknown&CardSet.CHARACTERS),
+					(Weapon)CardSet.first(unknown&CardSet.WEAPONS));
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Return the CardSet of cards the player's notebook has not ruled out of the envelope.
+	 * @param p
+	 * @return
+	 */
+	private int unknown(Player p) {
+		return game.getNotebook(p).getEnvelopeCandidates();
+	}
+}
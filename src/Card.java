@@ -10,4 +10,9 @@ public interface Card {
 	public String toString();
 	public boolean equals(Card c);
 	public Image getImage();
+	/**
+	 * Return this card's position among all 21 cards, see CardSet.
+	 * @return
+	 */
+	public int ordinal();
 }
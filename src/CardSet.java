@@ -0,0 +1,104 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+
+/**
+ * Static helpers for treating an int as a set of cards, with bit i set
+ * when the card with ordinal i is present.
+ * Characters take ordinals 0-5, weapons 6-11 and rooms 12-20,
+ * so dealing, refuting and accusing become bitwise operations.
+ * @author Edwin
+ *
+ */
+public class CardSet {
+
+	public static final int nCards = 21;
+	//the first ordinal of each kind of card
+	public static final int CHARACTER_BASE = 0;
+	public static final int WEAPON_BASE = 6;
+	public static final int ROOM_BASE = 12;
+	//the sets of all cards of each kind
+	public static final int CHARACTERS = 0x3F<<CHARACTER_BASE;
+	public static final int WEAPONS = 0x3F<<WEAPON_BASE;
+	public static final int ROOMS = 0x1FF<<ROOM_BASE;
+	public static final int ALL = CHARACTERS|WEAPONS|ROOMS;
+
+	/**
+	 * Return the set holding just the given card.
+	 * @param c
+	 * @return
+	 */
+	public static int of(Card c) {
+		return 1<<c.ordinal();
+	}
+
+	/**
+	 * Return the set holding the given cards.
+	 * @param cards
+	 * @return
+	 */
+	public static int of(Card... cards) {
+		int set = 0;
+		for (Card c : cards) {
+			set |= 1<<c.ordinal();
+		}
+		return set;
+	}
+
+	/**
+	 * Return the shared card with the given ordinal.
+	 * @param ordinal
+	 * @return
+	 */
+	public static Card card(int ordinal) {
+		if (ordinal<WEAPON_BASE) return Character.valueOf(ordinal-CHARACTER_BASE);
+		if (ordinal<ROOM_BASE) return Weapon.valueOf(ordinal-WEAPON_BASE);
+		return Room.valueOf(ordinal-ROOM_BASE);
+	}
+
+	/**
+	 * Return the card in the set with the lowest ordinal, or null if the set is empty.
+	 * @param set
+	 * @return
+	 */
+	public static Card first(int set) {
+		if (set==0) return null;
+		return card(Integer.numberOfTrailingZeros(set));
+	}
+
+	/**
+	 * Return the number of cards in the set.
+	 * @param set
+	 * @return
+	 */
+	public static int size(int set) {
+		return Integer.bitCount(set);
+	}
+
+	/**
+	 * Return the ordinal of a randomly chosen card from a non-empty set.
+	 * @param set
+	 * @param random
+	 * @return
+	 */
+	public static int random(int set, SplittableRandom random) {
+		for (int n=random.nextInt(Integer.bitCount(set)); n>0; n--) {
+			set &= set-1;
+		}
+		return Integer.numberOfTrailingZeros(set);
+	}
+
+	/**
+	 * Return the cards in the set, in order of ordinal.
+	 * @param set
+	 * @return
+	 */
+	public static List<Card> toList(int set) {
+		List<Card> cards = new ArrayList<Card>(Integer.bitCount(set));
+		for (; set!=0; set &= set-1) {
+			cards.add(card(Integer.numberOfTrailingZeros(set)));
+		}
+		return cards;
+	}
+}
@@ -1,9 +1,5 @@
 import java.awt.Color;
 import java.awt.Image;
-import java.io.File;
-import java.io.IOException;
-
-import javax.imageio.ImageIO;
 
 
 /**
@@ -16,14 +12,13 @@ import javax.imageio.ImageIO;
 public class Character implements Card {
 	
 	private static String[] characters = {"Scarlett","Mustard","White","Green","Peacock","Plum"};
+	//the single shared instance of each card, see valueOf()
+	private static final Character[] instances = createInstances();
 	private int val;
-	private static final String IMAGE_PATH = "resources/";
-	private Image image;
 	
 	public Character(int i) {
 		if (i<0||i>=characters.length) throw new RuntimeException();
 		val = i;
-		image = loadImage(toString()+".gif");
 	}
 	public Character (String str) {
 		boolean match = false;
@@ -37,6 +32,36 @@ public class Character implements Card {
 		if (!match) throw new RuntimeException();
 	}
 	
+	/**
+	 * Return the shared instance of the card with the given index.
+	 * @param i
+	 * @return
+	 */
+	public static Character valueOf(int i) {
+		if (i<0||i>=instances.length) throw new RuntimeException();
+		return instances[i];
+	}
+	
+	/**
+	 * Return the shared instance of the card with the given name.
+	 * @param str
+	 * @return
+	 */
+	public static Character valueOf(String str) {
+		for (int i=0; i<characters.length; i++) {
+			if (characters[i].equalsIgnoreCase(str)) return instances[i];
+		}
+		throw new RuntimeException();
+	}
+	
+	private static Character[] createInstances() {
+		Character[] instances = new Character[characters.length];
+		for (int i=0; i<characters.length; i++) {
+			instances[i] = new Character(i);
+		}
+		return instances;
+	}
+	
 	public String toString() {
 		return characters[val];
 	}
@@ -93,24 +118,15 @@ public class Character implements Card {
 		return (chara.val==this.val);
 	}
 
-	public Image getImage() {
-		return image;
+	public int ordinal() {
+		return CardSet.CHARACTER_BASE+val;
 	}
 	
 	/**
-	 * Load an image from the file system, using a given filename.
-	 * 
-	 * @param filename
+	 * Return the image of this card, from the shared image cache.
 	 * @return
 	 */
-	public static Image loadImage(String filename) {
-		Image img;
-		try {
-			File file = new File(IMAGE_PATH+filename);
-			img = ImageIO.read(file);
-		} catch (IOException e) {
-			throw new RuntimeException("Unable to load image: " + filename);
-		}
-		return img;
+	public Image getImage() {
+		return ImageCache.get(toString()+".gif");
 	}
 }
@@ -0,0 +1,41 @@
+import java.util.List;
+
+
+/**
+ * A Controller makes the decisions for the players in a Game.
+ * It chooses who is playing, and what each player does on their turn,
+ * by calling back into the Game and its Board.
+ * The GUI is the controller for people playing at the screen,
+ * the BotController plays without any display at all,
+ * and the GameServer passes each turn to a player connected over the network.
+ * @author Edwin
+ *
+ */
+public interface Controller {
+	
+	/**
+	 * Create the players in the game, both playing and non-playing.
+	 * @return
+	 */
+	public List<Player> initialisePlayers();
+	
+	/**
+	 * The game has been set up and is about to start.
+	 * @param game
+	 */
+	public void startGame(Game game);
+	
+	/**
+	 * A player's turn begins with the given die roll. 
+	 * The controller must call game.endTurn(p) once the turn is over.
+	 * @param p
+	 * @param die
+	 */
+	public void takeTurn(Player p, int die);
+	
+	/**
+	 * The game is over, as every player but the winner has been eliminated.
+	 * @param winner the last player left, or null if the last players were all eliminated at once
+	 */
+	public void endGame(Player winner);
+}
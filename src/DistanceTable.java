@@ -0,0 +1,141 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+
+/**
+ * The DistanceTable holds the fewest die moves needed to get between every pair of tiles
+ * on the board, ignoring where players are, one byte per pair.
+ * As the board layout never changes, the table is built once and written to a cache file
+ * named after the layout's hash, which later startups memory map instead of rebuilding.
+ * @author Edwin
+ *
+ */
+public class DistanceTable {
+
+	private static final int MAGIC = 0x436c7565; //"Clue"
+	private static final int HEADER = 12;
+	private static final int UNREACHABLE = 0xFF;
+	private static final String CACHE_DIR = System.getProperty("cluedo.cache",
+			System.getProperty("java.io.tmpdir"));
+	//tables already loaded, by layout hash
+	private static final Map<Integer,DistanceTable> tables = new HashMap<Integer,DistanceTable>();
+
+	private final int nTiles;
+	private final ByteBuffer table;
+
+	private DistanceTable(int nTiles, ByteBuffer table) {
+		this.nTiles = nTiles;
+		this.table = table;
+	}
+
+	/**
+	 * Return the distance table for the given board's layout, loading it from the cache file
+	 * or building it if it has not been loaded yet.
+	 * @param board
+	 * @return
+	 */
+	public static synchronized DistanceTable forBoard(Board board) {
+		int hash = board.layoutHash();
+		DistanceTable table = tables.get(hash);
+		if (table==null) {
+			File file = new File(CACHE_DIR, "cluedo-distances-"+Integer.toHexString(hash)+".bin");
+			table = load(file, hash, board.getTileCount());
+			if (table==null) {
+				table = build(board);
+				save(file, hash, table);
+			}
+			tables.put(hash, table);
+		}
+		return table;
+	}
+
+	/**
+	 * Load or build the table for the standard board now, so that games which need it,
+	 * such as the bots', do not stop to build it partway through.
+	 * Call at startup, off any interactive thread.
+	 * @return
+	 */
+	public static DistanceTable preload() {
+		return forBoard(new Board(new ArrayList<Player>()));
+	}
+
+	/**
+	 * Return the fewest die moves to get from the tile at index from to the tile at index to,
+	 * where an index is y*25+x, or -1 if it can never be reached.
+	 * @param from
+	 * @param to
+	 * @return
+	 */
+	public int distance(int from, int to) {
+		int d = table.get(HEADER+from*nTiles+to)&0xFF;
+		return d==UNREACHABLE ? -1 : d;
+	}
+
+	/**
+	 * Build the table with a breadth first search from every tile.
+	 * @param board
+	 * @return
+	 */
+	private static DistanceTable build(Board board) {
+		int nTiles = board.getTileCount();
+		ByteBuffer table = ByteBuffer.allocate(HEADER+nTiles*nTiles);
+		int[] cost = new int[nTiles];
+		for (int from=0; from<nTiles; from++) {
+			board.search(from, UNREACHABLE-1, false, cost, null);
+			for (int to=0; to<nTiles; to++) {
+				int d = cost[to]==Integer.MAX_VALUE ? UNREACHABLE : cost[to];
+				table.put(HEADER+from*nTiles+to, (byte)d);
+			}
+		}
+		return new DistanceTable(nTiles, table);
+	}
+
+	/**
+	 * Memory map a cached table, returning null if it is missing or does not match the layout.
+	 * @param file
+	 * @param hash
+	 * @param nTiles
+	 * @return
+	 */
+	private static DistanceTable load(File file, int hash, int nTiles) {
+		if (!file.isFile() || file.length()!=HEADER+(long)nTiles*nTiles) return null;
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+			MappedByteBuffer map = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+			if (map.getInt(0)!=MAGIC || map.getInt(4)!=hash || map.getInt(8)!=nTiles) return null;
+			return new DistanceTable(nTiles, map);
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Write a table to the cache file. The cache is only an optimisation,
+	 * so failing to write it is ignored.
+	 * @param file
+	 * @param hash
+	 * @param table
+	 */
+	private static void save(File file, int hash, DistanceTable table) {
+		ByteBuffer buffer = table.table.duplicate();
+		buffer.putInt(0, MAGIC);
+		buffer.putInt(4, hash);
+		buffer.putInt(8, table.nTiles);
+		buffer.clear();
+		File tmp = new File(file.getPath()+".tmp");
+		try (RandomAccessFile raf = new RandomAccessFile(tmp, "rw")) {
+			raf.setLength(0);
+			raf.getChannel().write(buffer);
+		} catch (IOException e) {
+			tmp.delete();
+			return;
+		}
+		if (!tmp.renameTo(file)) tmp.delete();
+	}
+}
@@ -0,0 +1,313 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+
+/**
+ * The EnvelopeProbability gives the exact chance of each character, weapon and room being
+ * the envelope, from what a player's Notebook knows.
+ * For each triple that might be the envelope, it counts the deals of the other cards
+ * that fit every fact and clause in the notebook, all such deals being equally likely.
+ * A count deals out the cards one at a time, remembering the hands' remaining space and
+ * which clauses are still unsatisfied, so deals that reach the same state are only counted once.
+ * Triples are counted in parallel, as they are independent.
+ * @author Edwin
+ *
+ */
+public class EnvelopeProbability {
+
+	private static final int nChars = 6;
+	private static final int nWeapons = 6;
+	private static final int nRooms = 9;
+	private static final int nTriples = nChars*nWeapons*nRooms;
+	//triples below this many are counted in one task rather than split further
+	private static final int batchSize = 8;
+	//bits used for each seat's remaining space in a state, the rest being clauses
+	private static final int capacityBits = 4;
+
+	private Notebook notebook;
+	private int nSeats;
+	private int maxClauses;
+	private long[] counts = new long[nTriples];
+	private long total = 0;
+
+	/**
+	 * Count the deals fitting the given notebook, splitting the work across the given pool.
+	 * @param notebook
+	 * @param pool
+	 */
+	public EnvelopeProbability(Notebook notebook, ForkJoinPool pool) {
+		this.notebook = notebook;
+		nSeats = notebook.getSeatCount();
+		maxClauses = 64-nSeats*capacityBits;
+		pool.invoke(new Batch(0, nTriples));
+		for (long count : counts) total += count;
+	}
+
+	/**
+	 * Return the chance the envelope is the given character, weapon and room.
+	 * @param character
+	 * @param weapon
+	 * @param room
+	 * @return
+	 */
+	public double getProbability(Character character, Weapon weapon, Room room) {
+		if (total==0) return 0;
+		int c = character.ordinal()-CardSet.CHARACTER_BASE;
+		int w = weapon.ordinal()-CardSet.WEAPON_BASE;
+		int r = room.ordinal()-CardSet.ROOM_BASE;
+		return (double)counts[(c*nWeapons+w)*nRooms+r]/total;
+	}
+
+	/**
+	 * Return the chance the given card is in the envelope.
+	 * @param card
+	 * @return
+	 */
+	public double getProbability(Card card) {
+		if (total==0) return 0;
+		long count = 0;
+		for (int t=0; t<nTriples; t++) {
+			if ((triple(t)&CardSet.of(card))!=0) count += counts[t];
+		}
+		return (double)count/total;
+	}
+
+	/**
+	 * Return the most likely envelope as a CardSet, or 0 if the notebook allows no deals.
+	 * @return
+	 */
+	public int getMostLikely() {
+		int best = -1;
+		for (int t=0; t<nTriples; t++) {
+			if (counts[t]>0 && (best<0 || counts[t]>counts[best])) best = t;
+		}
+		return best<0 ? 0 : triple(best);
+	}
+
+	/**
+	 * Return the number of deals that fit the notebook.
+	 * @return
+	 */
+	public long getDeals() {
+		return total;
+	}
+
+	/**
+	 * Return the CardSet of the triple with the given index.
+	 * @param t
+	 * @return
+	 */
+	private static int triple(int t) {
+		int r = t%nRooms;
+		int w = (t/nRooms)%nWeapons;
+		int c = t/(nRooms*nWeapons);
+		return (1<<(CardSet.CHARACTER_BASE+c))|(1<<(CardSet.WEAPON_BASE+w))|(1<<(CardSet.ROOM_BASE+r));
+	}
+
+	/**
+	 * Count the deals of the other cards that fit the notebook, with the given envelope.
+	 * @param envelope
+	 * @return
+	 */
+	private long count(int envelope) {
+		int owner = notebook.getSeatCount();
+		if ((envelope&notebook.getHasNot(owner))!=0) return 0;
+		if ((envelope|notebook.getHas(owner))!=envelope) return 0;
+		//cards already placed take up their owners' space, leaving the rest to deal
+		int free = CardSet.ALL & ~envelope;
+		long capacities = 0;
+		for (int s=0; s<nSeats; s++) {
+			int has = notebook.getHas(s);
+			free &= ~has;
+			capacities |= (long)(notebook.getSize(s)-CardSet.size(has))<<(s*capacityBits);
+		}
+		//deal the cards in clauses first, so clauses are settled and drop out of the state early
+		int inClauses = 0;
+		for (int s=0; s<nSeats; s++) {
+			for (int clause : notebook.getClauses(s)) inClauses |= clause;
+		}
+		inClauses &= free;
+		int[] cards = new int[CardSet.size(free)];
+		int n = 0;
+		for (int c=inClauses; c!=0; c &= c-1) cards[n++] = Integer.numberOfTrailingZeros(c);
+		for (int c=free&~inClauses; c!=0; c &= c-1) cards[n++] = Integer.numberOfTrailingZeros(c);
+		//for each card, which seats may have it
+		int[] allowed = new int[cards.length];
+		for (int i=0; i<cards.length; i++) {
+			for (int s=0; s<nSeats; s++) {
+				if ((notebook.getHasNot(s)&(1<<cards[i]))==0) allowed[i] |= 1<<s;
+			}
+			if (allowed[i]==0) return 0;
+		}
+		//for each card and seat, the clauses it satisfies,
+		//and for each card, the clauses with no cards left after it
+		long[][] satisfies = new long[cards.length][nSeats];
+		long[] closes = new long[cards.length];
+		long open = 0;
+		int nClauses = 0;
+		for (int s=0; s<nSeats; s++) {
+			int[] clauses = notebook.getClauses(s);
+			for (int j=0; j<clauses.length; j++) {
+				int clause = clauses[j] & ~envelope;
+				if (clause==0) return 0;
+				if (implied(clauses, j, envelope)) continue;
+				if (nClauses==maxClauses) throw new IllegalStateException("Too many clauses to count");
+				long bit = 1L<<nClauses++;
+				open |= bit;
+				int last = -1;
+				for (int i=0; i<cards.length; i++) {
+					if ((clause&(1<<cards[i]))!=0) {
+						satisfies[i][s] |= bit;
+						last = i;
+					}
+				}
+				if (last<0) return 0;
+				closes[last] |= bit;
+			}
+		}
+		Counter counter = new Counter(cards.length, allowed, satisfies, closes);
+		return counter.count(0, capacities, open);
+	}
+
+	/**
+	 * Return if a seat's clause j is implied by another of its clauses, with the given envelope,
+	 * so it need not be counted. Of identical clauses, the first is kept.
+	 * @param clauses
+	 * @param j
+	 * @param envelope
+	 * @return
+	 */
+	private static boolean implied(int[] clauses, int j, int envelope) {
+		int clause = clauses[j] & ~envelope;
+		for (int k=0; k<clauses.length; k++) {
+			int other = clauses[k] & ~envelope;
+			if (k!=j && (other&~clause)==0 && (other!=clause || k<j)) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Counts the ways to deal a fixed list of cards, memoising on the remaining space and open clauses.
+	 */
+	private class Counter {
+
+		private int nCards;
+		private int[] allowed;
+		private long[][] satisfies;
+		private long[] closes;
+		private Memo[] memo;
+
+		Counter(int nCards, int[] allowed, long[][] satisfies, long[] closes) {
+			this.nCards = nCards;
+			this.allowed = allowed;
+			this.satisfies = satisfies;
+			this.closes = closes;
+			memo = new Memo[nCards];
+			for (int i=0; i<nCards; i++) memo[i] = new Memo();
+		}
+
+		/**
+		 * Return the ways to deal the cards from i onwards, given each seat's remaining space
+		 * and the clauses not yet satisfied.
+		 * @param i
+		 * @param capacities
+		 * @param open
+		 * @return
+		 */
+		long count(int i, long capacities, long open) {
+			if (i==nCards) return 1;
+			long key = capacities|(open<<(nSeats*capacityBits));
+			long known = memo[i].get(key);
+			if (known>=0) return known;
+			long ways = 0;
+			for (int seats=allowed[i]; seats!=0; seats &= seats-1) {
+				int s = Integer.numberOfTrailingZeros(seats);
+				int shift = s*capacityBits;
+				if (((capacities>>>shift)&((1<<capacityBits)-1))==0) continue;
+				long left = open & ~satisfies[i][s];
+				if ((left&closes[i])!=0) continue; //a clause can no longer be satisfied
+				ways += count(i+1, capacities-(1L<<shift), left);
+			}
+			memo[i].put(key, ways);
+			return ways;
+		}
+	}
+
+	/**
+	 * A hash map from states to counts, using open addressing over primitive arrays
+	 * so the counting does not box every state.
+	 */
+	private static class Memo {
+
+		private long[] keys = new long[64];
+		private long[] values = new long[64]; //count plus one, so zero is an empty slot
+		private int size = 0;
+
+		/**
+		 * Return the count for a state, or -1 if it has not been counted.
+		 * @param key
+		 * @return
+		 */
+		long get(long key) {
+			int mask = keys.length-1;
+			for (int i=hash(key)&mask; values[i]!=0; i=(i+1)&mask) {
+				if (keys[i]==key) return values[i]-1;
+			}
+			return -1;
+		}
+
+		void put(long key, long value) {
+			if (2*(size+1)>keys.length) grow();
+			int mask = keys.length-1;
+			int i = hash(key)&mask;
+			while (values[i]!=0 && keys[i]!=key) i = (i+1)&mask;
+			if (values[i]==0) size++;
+			keys[i] = key;
+			values[i] = value+1;
+		}
+
+		private void grow() {
+			long[] oldKeys = keys;
+			long[] oldValues = values;
+			keys = new long[oldKeys.length*2];
+			values = new long[oldValues.length*2];
+			size = 0;
+			for (int i=0; i<oldKeys.length; i++) {
+				if (oldValues[i]!=0) put(oldKeys[i], oldValues[i]-1);
+			}
+		}
+
+		private static int hash(long key) {
+			key *= 0x9E3779B97F4A7C15L;
+			return (int)(key>>>32);
+		}
+	}
+
+	/**
+	 * Counts a range of triples, splitting it in half until it is small enough to count directly.
+	 */
+	private class Batch extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private int from;
+		private int to;
+
+		Batch(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to-from<=batchSize) {
+				for (int t=from; t<to; t++) {
+					counts[t] = count(triple(t));
+				}
+				return;
+			}
+			int mid = (from+to)>>>1;
+			invokeAll(new Batch(from, mid), new Batch(mid, to));
+		}
+	}
+}
@@ -1,9 +1,7 @@
 import java.awt.Dimension;
 import java.awt.FlowLayout;
 import java.awt.Font;
-import java.awt.Graphics2D;
 import java.awt.Image;
-import java.awt.RenderingHints;
 import java.awt.Toolkit;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
@@ -11,17 +9,13 @@ import java.awt.event.ComponentEvent;
 import java.awt.event.ComponentListener;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
-import java.awt.image.BufferedImage;
-import java.io.File;
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
 
-import javax.imageio.ImageIO;
 import javax.swing.BoxLayout;
 import javax.swing.ButtonGroup;
-import javax.swing.ImageIcon;
 import javax.swing.JButton;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
@@ -34,11 +28,15 @@ import javax.swing.JPopupMenu;
 import javax.swing.JRadioButton;
 import javax.swing.JTextArea;
 import javax.swing.JTextField;
+import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
+import javax.swing.Timer;
 import javax.swing.ToolTipManager;
 
 /**
  * The GUI (Graphical User Interface) displays all information related to the Cluedo game
  * to the user, and also obtains all input from the user, except that by the BoardCanvas.
+ * It is the Controller for a game played by people sitting at the screen.
  * This involves asking the user for their players' names and characters,
  * displaying the interactive buttons and informative text fields,
  * and asking the user for their suggestions and accusations.
@@ -46,7 +44,7 @@ import javax.swing.ToolTipManager;
  * @author Edwin
  *
  */
-public class GUI {
+public class GUI implements Controller {
 	
 	private JFrame frame;
 	private Game game;
@@ -55,19 +53,43 @@ public class GUI {
 	private JTextField hover;
 	private JLabel dieLabel;
 	private JPanel handPanel;
+	//the rows and labels showing the cards in hand, reused every turn
+	private List<JPanel> handRows = new ArrayList<JPanel>();
+	private List<JLabel> cardSlots = new ArrayList<JLabel>();
+	private int shownSlots = 0; //how many of the card labels are showing
 	private JPanel rightPanel;
 	private Player turn;
 	private int die;
 	private JButton suggestButton;
 	private JMenuItem suggestItem;
+	private JButton endTurnButton;
+	private JMenuItem endTurnItem;
+	//the current turn has been shown and not yet ended, so End turn may be pressed
+	private boolean turnShown = false;
+	private boolean hinting = false; //a hint is being worked out in the background
 	private List<JButton> buttons;
 	private List<JLabel> separators;
 	private JTextArea header;
 	
 	private String action = "";
 	private double scale = 1;
+	//the cards and die faces at the current scale, enough for every card and face
+	private ScaledImageCache scaledImages = new ScaledImageCache(scaledImageCapacity);
+	private static final int scaledImageCapacity = 32;
+	//rescales once the window has stopped changing size for this long
+	private Timer resizeTimer = new Timer(resizeDelay, new ActionListener() {
+		public void actionPerformed(ActionEvent e) {
+			rescale();
+		}
+	});
+	private static final int resizeDelay = 150;
+	private int lastWidth = frameWidth;
+	private int lastHeight = frameHeight;
+	//counts rescales, so a rescale finishing after a newer one has started is dropped
+	private int rescaleGeneration = 0;
 
 	private static final int maxPlayers = 6;
+	private static final int cardsPerRow = 5;
 	private static final int minPlayers = 3;
 	private static final int dialogWidth = 300;
 	private static final int dialogHeight = 250;
@@ -76,7 +98,6 @@ public class GUI {
 	private static final int rightPanelWidth = 500;
 	private static final int rightPanelHeight = 600;
 	private static final int separatorSize = 15;
-	private static final String IMAGE_PATH = "resources/";
 	private static final String dicePath = "Dice/";
 	
 	private Font FONT = new Font("Arial", Font.BOLD, 12);
@@ -104,6 +125,7 @@ public class GUI {
 	    frame.setSize(frameWidth, frameHeight);
 	    frame.setLayout(new FlowLayout());
 	    frame.addComponentListener(new Components());
+	    resizeTimer.setRepeats(false);
 	    
 	    Keys keys = new Keys();
 	    addMenu(keys);
@@ -145,6 +167,7 @@ public class GUI {
 	    rightPanel.add(hover);
 	    
 	    frame.add(rightPanel);
+	    scaledImages.prewarm(scaledImageSources(), scale);
 	    frame.setVisible(true);
 	    canvas.repaint();
 	}
@@ -171,8 +194,9 @@ public class GUI {
 	    menubar.add(file);
 	    
 	    JMenu gameMenu = new JMenu("Game");
-	    JMenuItem endTurnItem = new JMenuItem("End turn");
+	    endTurnItem = new JMenuItem("End turn");
 	    endTurnItem.setActionCommand("endTurn");
+	    endTurnItem.setEnabled(false);
 	    endTurnItem.addActionListener(new listener());
 	    suggestItem = new JMenuItem("Suggest");
 	    suggestItem.setActionCommand("suggest");
@@ -181,9 +205,17 @@ public class GUI {
 	    JMenuItem accuseItem = new JMenuItem("Accuse");
 	    accuseItem.setActionCommand("accuse");
 	    accuseItem.addActionListener(new listener());
+	    JMenuItem notebookItem = new JMenuItem("Notebook");
+	    notebookItem.setActionCommand("notebook");
+	    notebookItem.addActionListener(new listener());
 	    gameMenu.add(endTurnItem);
 	    gameMenu.add(suggestItem);
 	    gameMenu.add(accuseItem);
+	    JMenuItem hintItem = new JMenuItem("Hint");
+	    hintItem.setActionCommand("hint");
+	    hintItem.addActionListener(new listener());
+	    gameMenu.add(notebookItem);
+	    gameMenu.add(hintItem);
 	    menubar.add(gameMenu);
 	    
 	    JMenuItem help = new JMenuItem("Hotkeys");
@@ -210,13 +242,14 @@ public class GUI {
 	private void addButtons(JPanel rightPanel, KeyListener keys) {
 		buttons = new ArrayList<JButton>();
 
-		JButton endTurn = new JButton("End turn");
-		endTurn.setActionCommand("endTurn");
-		endTurn.addActionListener(new listener());
-	    endTurn.addKeyListener(keys);
-	    endTurn.setFont(FONT);
-	    rightPanel.add(endTurn);
-	    buttons.add(endTurn);
+		endTurnButton = new JButton("End turn");
+		endTurnButton.setActionCommand("endTurn");
+		endTurnButton.setEnabled(false);
+		endTurnButton.addActionListener(new listener());
+	    endTurnButton.addKeyListener(keys);
+	    endTurnButton.setFont(FONT);
+	    rightPanel.add(endTurnButton);
+	    buttons.add(endTurnButton);
 	    addSeparator(rightPanel);
 	    
 	    suggestButton = new JButton("Make a suggestion");
@@ -247,65 +280,181 @@ public class GUI {
 	
 	/**
 	 * Display a player's turn beginning, by updating the turn text, die and hand.
+	 * Called from whichever thread started the game or ended the last turn,
+	 * so the turn is passed over to the event thread, which the GUI's state is only ever touched on.
+	 * It is passed over even from the event thread, so any input already queued for
+	 * the previous turn is handled before this one is shown.
 	 * @param p
+	 * @param die
 	 */
-	public void takeTurn(Player p) {
+	public void takeTurn(final Player p, final int die) {
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				showTurn(p, die);
+			}
+		});
+	}
+	
+	/**
+	 * Show a player's turn, on the event thread, and let End turn be pressed again.
+	 * @param p
+	 * @param die
+	 */
+	private void showTurn(Player p, int die) {
 		this.turn = p;
 		updateHand();
 		text.setText("Player " + p.getPlayerName() + 
 				" (" + p.getName() + "), please take your turn.");
-		die = new Random().nextInt(6)+1;
+		this.die = die;
 		updateDie();
 		suggestButton.setEnabled(game.board.isRoom(p.getX(), p.getY()));
 		suggestItem.setEnabled(game.board.isRoom(p.getX(), p.getY()));
 		
 		frame.repaint();
 		if (p.isEliminated()) {
-			game.endTurn();
+			game.endTurn(p);
+			return;
 		}
+		turnShown = true;
+		endTurnButton.setEnabled(true);
+		endTurnItem.setEnabled(true);
+	}
+	
+	/**
+	 * End the current player's turn, if it has been shown.
+	 * End turn is disabled from then until the next turn is shown,
+	 * so a second press can not end that turn too.
+	 */
+	private void endTurn() {
+		if (!turnShown) return;
+		turnShown = false;
+		endTurnButton.setEnabled(false);
+		endTurnItem.setEnabled(false);
+		game.endTurn(turn);
 	}
 	
 	/**
 	 * Draw all the cards in the current player's hand, scaled appropriately.
+	 * The card labels are kept and reused from turn to turn, so only their icons change,
+	 * and the panel is only laid out again when the number of cards shown changes.
 	 */
 	private void updateHand() {
-		handPanel.removeAll();
-		JPanel row = new JPanel();
-		handPanel.add(row);
-		int i=0;
-		for (Card c : turn.getHand()) {
-			JLabel cardLabel = new JLabel();
-			Image image = c.getImage();
-			int width = (int)(image.getWidth(null)*scale);
-			int height = (int)(image.getHeight(null)*scale);
-			image = getScaledImage(image,width,height);
-			cardLabel.setIcon(new ImageIcon(image));
-			row.add(cardLabel);
-			i++;
-			if (i>4) {
-				row = new JPanel();
+		int hand = turn.getHandSet();
+		int n = CardSet.size(hand);
+		while (cardSlots.size()<n) {
+			if (cardSlots.size()%cardsPerRow==0) {
+				JPanel row = new JPanel();
+				handRows.add(row);
 				handPanel.add(row);
-				i=0;
 			}
+			JLabel cardLabel = new JLabel();
+			cardSlots.add(cardLabel);
+			handRows.get(handRows.size()-1).add(cardLabel);
+		}
+		for (int i=0; i<n; i++, hand &= hand-1) {
+			Card c = CardSet.card(Integer.numberOfTrailingZeros(hand));
+			cardSlots.get(i).setIcon(scaledImages.get(c.getImage(), scale));
+		}
+		if (n!=shownSlots) {
+			for (int i=0; i<cardSlots.size(); i++) {
+				cardSlots.get(i).setVisible(i<n);
+			}
+			for (int r=0; r<handRows.size(); r++) {
+				handRows.get(r).setVisible(r*cardsPerRow<n);
+			}
+			shownSlots = n;
+			handPanel.revalidate();
 		}
 	}
 	
 	/**
-	 * Given a image, rescale it to size.
-	 * This method courtesy of stackoverflow.
-	 * @param srcImg
-	 * @param w
-	 * @param h
+	 * Return every playing player's cards and all the die faces,
+	 * the images that may be shown at the current scale.
 	 * @return
 	 */
-	private Image getScaledImage(Image srcImg, int w, int h){
-	    BufferedImage resizedImg = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
-	    Graphics2D g2 = resizedImg.createGraphics();
-	    g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, 
-	    		RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-	    g2.drawImage(srcImg, 0, 0, w, h, null);
-	    g2.dispose();
-	    return resizedImg;
+	private List<Image> scaledImageSources() {
+		List<Image> images = new ArrayList<Image>();
+		for (int i=0; i<=6; i++) {
+			images.add(dieImage(i));
+		}
+		for (Player p : game.getPlayers()) {
+			if (!p.isPlaying()) continue;
+			for (Card c : p.getHand()) {
+				images.add(c.getImage());
+			}
+		}
+		return images;
+	}
+	
+	/**
+	 * Rescale the GUI to the window's size, once resizing has paused.
+	 * The board, cards and die are rescaled on a background thread, 
+	 * then swapped in together on the event thread, unless the window has been resized again since.
+	 */
+	private void rescale() {
+		final int width = frame.getWidth();
+		final int height = frame.getHeight();
+		if (width==lastWidth && height==lastHeight) return;
+		lastWidth = width;
+		lastHeight = height;
+		final double newScale = Math.min(((double)(width)/(double)(frameWidth)),
+	    		((double)(height)/(double)(frameHeight)));
+		final int generation = ++rescaleGeneration;
+		final List<Image> images = scaledImageSources();
+		new SwingWorker<ScaledImageCache,Void>() {
+			private Image background;
+			
+			@Override
+			protected ScaledImageCache doInBackground() {
+				background = BoardCanvas.scaleBackground(newScale);
+				ScaledImageCache cache = new ScaledImageCache(scaledImageCapacity);
+				cache.prewarm(images, newScale);
+				return cache;
+			}
+			
+			@Override
+			protected void done() {
+				if (generation!=rescaleGeneration) return;
+				try {
+					applyScale(newScale, width, height, get(), background);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} catch (ExecutionException e) {
+					throw new RuntimeException("Unable to rescale", e.getCause());
+				}
+			}
+		}.execute();
+	}
+	
+	/**
+	 * Switch the GUI over to a new scale, using images already rescaled for it.
+	 * @param newScale
+	 * @param width
+	 * @param height
+	 * @param images
+	 * @param background
+	 */
+	private void applyScale(double newScale, int width, int height, ScaledImageCache images, Image background) {
+		scale = newScale;
+		scaledImages = images;
+		handPanel.setPreferredSize(new Dimension(width/3,height/2));
+		FONT = new Font("Arial", Font.BOLD, (int)(scale*12));
+		header.setFont(FONT);
+		text.setFont(FONT);
+		hover.setFont(FONT);
+		for (JButton b : buttons) {
+			b.setFont(FONT);
+		}
+		for (JLabel s : separators) {
+			s.setPreferredSize(new Dimension((int)(scale*separatorSize)
+					,(int)(scale*separatorSize)));
+		}
+		updateDie();
+	    rightPanel.setPreferredSize(new Dimension(
+	    		(int)(scale*rightPanelWidth),(int)(scale*rightPanelHeight)));
+	    canvas.scale(scale, background);
+	    if (turn!=null) updateHand();
+	    frame.revalidate();
 	}
 	
 	/**
@@ -341,11 +490,17 @@ public class GUI {
 	 * @param text
 	 */
 	public void hover(String text) {
-		hover.setText("Hover: "+text);
+		String label = "Hover: "+text;
+		//setting the same text would still revalidate and repaint the label
+		if (!label.equals(hover.getText())) hover.setText(label);
 	}
 	
+	/**
+	 * Return the player whose turn is on screen, or null before it is shown or once it has ended.
+	 * @return
+	 */
 	public Player getTurn(){
-		return turn;
+		return turnShown ? turn : null;
 	}
 	
 	public int getDie() {
@@ -445,7 +600,7 @@ public class GUI {
 	    addSeparator(panel);
 	    
 	    for (int i=0; i<maxPlayers; i++) {
-			JRadioButton button = new JRadioButton(new Character(i).toString());
+			JRadioButton button = new JRadioButton(Character.valueOf(i).toString());
 			button.setActionCommand("char"+i);
 			if (chosen.contains(i)) button.setEnabled(false);
 			button.addActionListener(new listener());
@@ -538,9 +693,6 @@ public class GUI {
 					"Weapon not selected, please enter a weapon", "Cluedo Suggestion",
 					JOptionPane.PLAIN_MESSAGE,null,possibilities, possibilities[0]);
 		}
-		board.moveObj(weapon,room); //move this weapon to this room
-		canvas.repaint();
-		
 		possibilities = Character.listAsObject();
 		String character =(String) JOptionPane.showInputDialog(frame,"Enter a character", 
 				"Cluedo Suggestion",JOptionPane.PLAIN_MESSAGE,null,possibilities,
@@ -550,11 +702,9 @@ public class GUI {
 					"Character not selected, please enter a character", "Cluedo Suggestion",
 					JOptionPane.PLAIN_MESSAGE,null,possibilities, possibilities[0]);
 		}
-		board.moveObj(character,room); //move this character to this room
+		//moves the weapon and character to this room
+		String output = describe(game.suggest(turn, weapon, character));
 		canvas.repaint();
-		
-		Card[] cards = new Card[]{new Room(room),new Weapon(weapon),new Character(character)};
-		String output = game.compareToOtherPlayers(turn.getUid(), cards);
 		JOptionPane.showConfirmDialog(frame, output, "Cluedo Suggestion",
 				JOptionPane.OK_CANCEL_OPTION,JOptionPane.INFORMATION_MESSAGE);
 		
@@ -568,10 +718,10 @@ public class GUI {
 		        "No, end turn.");
 		if (end==JOptionPane.OK_OPTION) {
 			if (!accuse()) {
-				game.endTurn();
+				endTurn();
 			}
 		} else {
-			game.endTurn();
+			endTurn();
 		}
 	}
 	
@@ -618,36 +768,170 @@ public class GUI {
 					"Character not selected, please enter a character", "CLUEDO ACCUSATION",
 					JOptionPane.PLAIN_MESSAGE,null,possibilities, possibilities[0]);
 		}
-		String output = game.checkWin(turn, new Room(room), new Character(character), 
-				new Weapon(weapon));
-		if (!output.endsWith("GAME OVER")) {
-			turn.eliminate();
-			output+=("\nPLAYER " + turn.getPlayerName() + " IS ELIMINATED");
-		}
-		JOptionPane.showConfirmDialog(frame, output, "CLUEDO ACCUSATION",
+		AccusationResult result = game.accuse(turn, Room.valueOf(room), Character.valueOf(character), 
+				Weapon.valueOf(weapon));
+		JOptionPane.showConfirmDialog(frame, describe(result), "CLUEDO ACCUSATION",
 				JOptionPane.OK_CANCEL_OPTION,JOptionPane.INFORMATION_MESSAGE);
-		if (output.endsWith("GAME OVER")) {
+		if (result.isCorrect()) {
 			System.exit(0);
 		}
-		game.endTurn();
+		endTurn();
 		return true;
 	}
 	
+	/**
+	 * Describe who was asked about a suggestion, and the card shown if it was refuted.
+	 * @param result
+	 * @return
+	 */
+	private static String describe(SuggestionResult result) {
+		StringBuilder output = new StringBuilder();
+		for (Player p : result.getPassed()) {
+			output.append("\nComparing to Player ").append(p.getPlayerName()).append("\n");
+			output.append("Player ").append(p.getPlayerName()).append(" has no matching cards");
+		}
+		if (result.isRefuted()) {
+			String name = result.getRefuter().getPlayerName();
+			output.append("\nComparing to Player ").append(name).append("\n");
+			output.append("Player ").append(name).append(" has matching card ").append(result.getShown());
+		} else {
+			output.append("\nComparation complete, no matches were found");
+		}
+		return output.toString();
+	}
+	
+	/**
+	 * Describe an accusation, revealing each card in turn up to the first that was wrong.
+	 * @param result
+	 * @return
+	 */
+	private static String describe(AccusationResult result) {
+		StringBuilder output = new StringBuilder();
+		output.append("Character ").append(result.getCharacter())
+				.append(result.isCharacterCorrect() ? " was correct!" : " was WRONG!");
+		if (result.isCharacterCorrect()) {
+			output.append("\nWeapon ").append(result.getWeapon())
+					.append(result.isWeaponCorrect() ? " was correct!" : " was WRONG!");
+			if (result.isWeaponCorrect()) {
+				output.append("\nRoom ").append(result.getRoom())
+						.append(result.isRoomCorrect() ? " was correct!" : " was WRONG!");
+			}
+		}
+		if (result.isCorrect()) {
+			output.append("\nCONGRATULATIONS TO PLAYER ").append(result.getAccuser().getUid());
+			output.append("\nGAME OVER");
+		} else {
+			output.append("\nPLAYER ").append(result.getAccuser().getPlayerName()).append(" IS ELIMINATED");
+		}
+		return output.toString();
+	}
+	
+	/**
+	 * Display the cards the current player's notebook has not ruled out of the envelope.
+	 */
+	private void notebook() {
+		if (turn==null) return;
+		Notebook notebook = game.getNotebook(turn);
+		if (notebook==null) return;
+		int candidates = notebook.getEnvelopeCandidates();
+		String output = "Player "+turn.getPlayerName()+"'s notebook.\n"+
+				(notebook.isSolved() ? "The envelope is solved!\n" : "")+
+				"Characters: "+CardSet.toList(candidates&CardSet.CHARACTERS)+"\n"+
+				"Weapons: "+CardSet.toList(candidates&CardSet.WEAPONS)+"\n"+
+				"Rooms: "+CardSet.toList(candidates&CardSet.ROOMS);
+		JOptionPane.showConfirmDialog(frame, output, "Cluedo Notebook",
+				JOptionPane.OK_CANCEL_OPTION,JOptionPane.INFORMATION_MESSAGE);
+	}
+	
+	/**
+	 * Display the most likely envelope for the current player, and the chance of each card still possible.
+	 * The chances are counted in the background, which can take a moment early in a game,
+	 * and shown once ready, so the window keeps responding meanwhile.
+	 */
+	private void hint() {
+		if (turn==null || hinting) return;
+		Notebook notebook = game.getNotebook(turn);
+		if (notebook==null) return;
+		//counted on a copy, as the game goes on updating the notebook on this thread
+		final Notebook snapshot = new Notebook(notebook);
+		final Player player = turn;
+		hinting = true;
+		new SwingWorker<EnvelopeProbability,Void>() {
+			@Override
+			protected EnvelopeProbability doInBackground() {
+				return new EnvelopeProbability(snapshot, ForkJoinPool.commonPool());
+			}
+			
+			@Override
+			protected void done() {
+				hinting = false;
+				EnvelopeProbability probability;
+				try {
+					probability = get();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				} catch (ExecutionException e) {
+					//such as a notebook with too many clauses to count
+					JOptionPane.showConfirmDialog(frame, "Unable to work out a hint:\n"+e.getCause().getMessage(),
+							"Cluedo Hint", JOptionPane.OK_CANCEL_OPTION,JOptionPane.ERROR_MESSAGE);
+					return;
+				}
+				showHint(player, snapshot, probability);
+			}
+		}.execute();
+	}
+	
+	/**
+	 * Show a player the chances worked out for their hint.
+	 * @param player
+	 * @param notebook
+	 * @param probability
+	 */
+	private void showHint(Player player, Notebook notebook, EnvelopeProbability probability) {
+		if (probability.getDeals()==0) {
+			JOptionPane.showConfirmDialog(frame, "Player "+player.getPlayerName()+"'s hint.\n"+
+					"No deal fits the notebook, so it must hold contradictory facts.", "Cluedo Hint",
+					JOptionPane.OK_CANCEL_OPTION,JOptionPane.WARNING_MESSAGE);
+			return;
+		}
+		int best = probability.getMostLikely();
+		String output = "Player "+player.getPlayerName()+"'s hint.\n"+
+				String.format("Most likely: %s (%.1f%%)\n", CardSet.toList(best),
+						100*probability.getProbability((Character)CardSet.first(best&CardSet.CHARACTERS),
+								(Weapon)CardSet.first(best&CardSet.WEAPONS),
+								(Room)CardSet.first(best&CardSet.ROOMS)));
+		for (Card card : CardSet.toList(notebook.getEnvelopeCandidates())) {
+			output += String.format("\n%s: %.1f%%", card, 100*probability.getProbability(card));
+		}
+		JOptionPane.showConfirmDialog(frame, output, "Cluedo Hint",
+				JOptionPane.OK_CANCEL_OPTION,JOptionPane.INFORMATION_MESSAGE);
+	}
+	
 	/**
 	 * Display the help.
 	 */
 	private void help() {
 		JOptionPane.showConfirmDialog(frame, "Cluedo Help\n"+
-				"Hotkeys:\nSpace = End turn\nS = Suggest\nA = Accuse\nESC = Exit\nH = Help", 
+				"Hotkeys:\nSpace = End turn\nS = Suggest\nA = Accuse\nN = Notebook\nI = Hint\nESC = Exit\nH = Help", 
 				"Cluedo",JOptionPane.OK_CANCEL_OPTION,JOptionPane.INFORMATION_MESSAGE);
 	}
 	
 	/**
-	 * End the game when all players but one are eliminated.
-	 * @param winner
+	 * End the game when all players but one are eliminated, or all of them are.
+	 * @param winner the last player left, or null
 	 */
-	public void endGame(Player winner) {
-		JOptionPane.showConfirmDialog(frame, "EVERYONE EXCEPT PLAYER "+winner.getPlayerName()
+	public void endGame(final Player winner) {
+		if (!SwingUtilities.isEventDispatchThread()) {
+			SwingUtilities.invokeLater(new Runnable() {
+				public void run() {
+					endGame(winner);
+				}
+			});
+			return;
+		}
+		JOptionPane.showConfirmDialog(frame, winner==null ? "EVERYONE IS OUT!\nNOBODY WINS" :
+				"EVERYONE EXCEPT PLAYER "+winner.getPlayerName()
 				+ " IS OUT!\nPLAYER " + winner.getPlayerName() + " WINS", 
 				"GAME OVER",
 				JOptionPane.OK_CANCEL_OPTION,JOptionPane.INFORMATION_MESSAGE);
@@ -672,11 +956,15 @@ public class GUI {
 					exit();
 				}
 			} else if (cmd.equals("endTurn")) {
-				game.endTurn();
+				endTurn();
 			} else if (cmd.equals("suggest")) {
 				suggest();
 			} else if (cmd.equals("accuse")) {
 				accuse();
+			} else if (cmd.equals("notebook")) {
+				notebook();
+			} else if (cmd.equals("hint")) {
+				hint();
 			} else if (cmd.equals("help")) {
 				help();
 			}
@@ -694,11 +982,15 @@ public class GUI {
 		public void keyPressed(KeyEvent arg0) {
 			int key = arg0.getKeyCode();
 			if (key==KeyEvent.VK_SPACE) {
-				game.endTurn();
+				endTurn();
 			} else if (key==KeyEvent.VK_S) {
 				suggest();
 			} else if (key==KeyEvent.VK_A) {
 				accuse();
+			} else if (key==KeyEvent.VK_N) {
+				notebook();
+			} else if (key==KeyEvent.VK_I) {
+				hint();
 			} else if (key==KeyEvent.VK_ESCAPE) {
 				exit();
 			} else if (key==KeyEvent.VK_H) {
@@ -717,7 +1009,7 @@ public class GUI {
 	
 	/**
 	 * A ComponentListener for detecting when the window is resized, and
-	 * resizing the components of the GUI appropriately.
+	 * resizing the components of the GUI appropriately once it stops changing.
 	 * @author Edwin
 	 *
 	 */
@@ -731,31 +1023,12 @@ public class GUI {
 		public void componentMoved(ComponentEvent arg0) {
 		}
 
+		/**
+		 * Wait for the resizing to pause before rescaling anything.
+		 */
 		@Override
 		public void componentResized(ComponentEvent arg0) {
-			int width = frame.getWidth();
-			int height = frame.getHeight();
-			if (width!=frameWidth || height!= frameHeight) {
-			    handPanel.setPreferredSize(new Dimension(width/3,height/2));
-			    scale = Math.min(((double)(width)/(double)(frameWidth)),
-			    		((double)(height)/(double)(frameHeight)));
-				FONT = new Font("Arial", Font.BOLD, (int)(scale*12));
-				header.setFont(FONT);
-				text.setFont(FONT);
-				hover.setFont(FONT);
-				for (JButton b : buttons) {
-					b.setFont(FONT);
-				}
-				for (JLabel s : separators) {
-					s.setPreferredSize(new Dimension((int)(scale*separatorSize)
-							,(int)(scale*separatorSize)));
-				}
-				updateDie();
-			    rightPanel.setPreferredSize(new Dimension(
-			    		(int)(scale*rightPanelWidth),(int)(scale*rightPanelHeight)));
-			    canvas.scale(scale);
-			    updateHand();
-			}
+			resizeTimer.restart();
 		}
 
 		@Override
@@ -765,18 +1038,13 @@ public class GUI {
 	}
 	
 	
-	private static final List<Image> dice = initialiseDice();
-	
 	/**
-	 * Preload the die images to save processing time.
+	 * Return the image of the given die face.
+	 * @param face
 	 * @return
 	 */
-	private static List<Image> initialiseDice() {
-		List<Image> dice = new ArrayList<Image>();
-		for (int i=0; i<=6; i++) {
-			dice.add(loadImage(dicePath+i+".png"));
-		}
-		return dice;
+	private static Image dieImage(int face) {
+		return ImageCache.get(dicePath+face+".png");
 	}
 	
 	/**
@@ -785,28 +1053,7 @@ public class GUI {
 	 * @return
 	 */
 	private void updateDie() {
-		Image dieImg = dice.get(die);
-		dieImg = getScaledImage(dieImg,(int)(dieImg.getWidth(null)*scale),
-				(int)(dieImg.getHeight(null)*scale));
-		dieLabel.setIcon(new ImageIcon(dieImg));
-	}
-	
-
-	/**
-	 * Load an image from the file system, using a given filename.
-	 * 
-	 * @param filename
-	 * @return
-	 */
-	public static Image loadImage(String filename) {
-		Image img;
-		try {
-			File file = new File(IMAGE_PATH+filename);
-			img = ImageIO.read(file);
-		} catch (IOException e) {
-			throw new RuntimeException("Unable to load image: " + filename);
-		}
-		return img;
+		dieLabel.setIcon(scaledImages.get(dieImage(die), scale));
 	}
 	
 }
@@ -1,77 +1,170 @@
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
 
 /**
  * A Cluedo game implementation, by Edwin Phease.
  * The Game class holds the board, the envelope and the list of players.
  * It will repeatedly take turns until the game ends.
  * Also supports checking player's suggestions and accusations.
+ * 
+ * The players' decisions are all made by a Controller, either the GUI or bots,
+ * so a game can be played without any display.
+ * The game is a state machine with no thread of its own: start() hands the first turn
+ * to the controller, and each call to endTurn(p), from whichever thread, such as the GUI's
+ * event thread, hands over the next. play() wraps this for callers that wait for the end.
+ * Each playing player has a Notebook, which the game tells the outcome of every suggestion.
  * @author Edwin
  *
  */
 public class Game {
 
 	public Board board;
-	public GUI gui;
+	private Controller controller;
+	private SplittableRandom random;
 	
 	private List<Player> players = new ArrayList<Player>();
-	private List<Card> envelope; //this holds the solution to the game
-	private Player winner = null;
+	//the playing players, in turn order, and each one's detective notebook
+	private List<Player> seats = new ArrayList<Player>();
+	private Notebook[] notebooks = new Notebook[0];
+	//the solution to the game, as the ordinals of its character, weapon and room cards
+	private int envelopeCharacter;
+	private int envelopeWeapon;
+	private int envelopeRoom;
+	private volatile Player winner = null;
 	private int turn = 0; //represents which player's turn it is, player 0 always goes first
-	private boolean endTurn = false;
+	private boolean inTurn = false; //a turn has been handed to the controller and not yet ended
+	private boolean advancing = false; //advance() is handing out turns
+	private boolean allEliminated = false;
+	//released once the game is over
+	private final CountDownLatch over = new CountDownLatch(1);
 	
 	private static final int nChars = 6;
 	private static final int nWeapons = 6;
 	private static final int nRooms = 9;
 	
+	public Game(Controller controller) {
+		this(controller, new SplittableRandom());
+	}
+	
 	/**
-	 * The main playing method, calls initialiseGame() and then repeatedly
-	 * gets each player to take their turns, checking if the game is over at each turn.
+	 * Create a game whose die rolls, envelope and deal all come from the given random stream,
+	 * so a game can be replayed from its seed.
+	 * @param controller
+	 * @param random
+	 */
+	public Game(Controller controller, SplittableRandom random) {
+		this.controller = controller;
+		this.random = random;
+	}
+	
+	/**
+	 * The main playing method, starts the game and then waits until it is over.
+	 * With a controller that ends every turn straight away, such as the bots,
+	 * the whole game is played before start() returns.
 	 */
 	public void play() {
-		initialiseGame();
-		while (winner == null) { // no winner means game is not over
-			// players.get(turn).takeTurn(scan, this);
-			if (players.get(turn).isPlaying()) {
-				gui.takeTurn(players.get(turn));
-				while (!endTurn) {
-					try {
-						Thread.sleep(100);
-					} catch (InterruptedException e) {
-						e.printStackTrace();
-					}
-				}
-				endTurn = false;
-			}
-			turn++;
-			// once each player has taken their turn, it is player 0's turn
-			// again
-			if (turn >= players.size()) {
-				turn = 0;
+		start();
+		boolean interrupted = false;
+		while (over.getCount()>0) {
+			try {
+				over.await();
+			} catch (InterruptedException e) {
+				interrupted = true;
 			}
-			// if multiple players, when all but 1 are eliminated, that 1 is
-			// the winner
-			if (players.size() > 1) {
-				int nAlive = 0;
-				Player winner = null;
-				for (Player p : players) {
-					if (p.isPlaying() && !p.isEliminated()) {
-						nAlive++;
-						winner = p;
-					}
-				}
-				if (nAlive == 1) {
-					gui.endGame(winner);
-					this.winner = winner;
+		}
+		if (interrupted) Thread.currentThread().interrupt();
+	}
+	
+	/**
+	 * Calls initialiseGame() and starts the first turn, then returns without waiting.
+	 * From then on the game only moves forward when a turn is ended by endTurn(p),
+	 * so a game waiting on a player holds no thread.
+	 */
+	public synchronized void start() {
+		initialiseGame();
+		advance();
+	}
+	
+	/**
+	 * End the given player's turn, and start the next one, returning false and doing nothing
+	 * if it is not their turn. Safe to call from any thread.
+	 * Each request names the turn it is for, so one arriving late, after that turn has
+	 * already ended and the next has been handed to the controller, can not end the next.
+	 * @param p
+	 * @return
+	 */
+	public synchronized boolean endTurn(Player p) {
+		if (!inTurn || players.get(turn)!=p) return false;
+		inTurn = false;
+		if (advancing) return true; //advance() carries on once the controller returns
+		finishTurn();
+		advance();
+		return true;
+	}
+	
+	/**
+	 * Return if the game is over, either won or with every player eliminated.
+	 * @return
+	 */
+	public boolean isOver() {
+		return over.getCount()==0;
+	}
+	
+	/**
+	 * Hand turns to the controller until one is left waiting for endTurn(p), or the game is over.
+	 * Turns the controller ends straight away are taken in this loop, rather than by recursion.
+	 */
+	private void advance() {
+		advancing = true;
+		try {
+			while (winner == null && !allEliminated) { // no winner means game is not over
+				Player p = players.get(turn);
+				if (p.isPlaying()) {
+					inTurn = true;
+					controller.takeTurn(p, random.nextInt(6)+1);
+					if (inTurn) return;
 				}
+				finishTurn();
 			}
-
+		} finally {
+			advancing = false;
 		}
+		over.countDown();
 	}
 	
-	public void endTurn() {
-		this.endTurn = true;
+	/**
+	 * Move on to the next player, and end the game if only one is left.
+	 */
+	private void finishTurn() {
+		turn++;
+		// once each player has taken their turn, it is player 0's turn
+		// again
+		if (turn >= players.size()) {
+			turn = 0;
+		}
+		// if multiple players, when all but 1 are eliminated, that 1 is
+		// the winner
+		if (players.size() > 1) {
+			int nAlive = 0;
+			Player winner = null;
+			for (Player p : players) {
+				if (p.isPlaying() && !p.isEliminated()) {
+					nAlive++;
+					winner = p;
+				}
+			}
+			if (nAlive == 1) {
+				controller.endGame(winner);
+				this.winner = winner;
+			} else if (nAlive == 0) {
+				//only possible if the last players are all eliminated at once
+				controller.endGame(null);
+				allEliminated = true;
+			}
+		}
 	}
 	
 	/**
@@ -84,78 +177,124 @@ public class Game {
 	 * dealing the remaining cards out to each player.
 	 */
 	public void initialiseGame() {
-		gui = new GUI();
 		//get number of players required
-		players = gui.initialisePlayers();
-		//create list of cards, envelope
-		List<Card> cards = new ArrayList<Card>();
-		for (int i=0; i<nWeapons; i++) {
-			cards.add(new Weapon(i));
-		}
-		for (int i=0; i<nChars; i++) {
-			cards.add(new Character(i));
+		players = controller.initialisePlayers();
+		//create the envelope, leaving the rest of the cards
+		int deck = createEnvelope();
+		//deal out the remaining cards evenly to each player, in a random order
+		int[] cards = new int[CardSet.size(deck)];
+		for (int i=0; i<cards.length; i++, deck &= deck-1) {
+			cards[i] = Integer.numberOfTrailingZeros(deck);
 		}
-		for (int i=0; i<nRooms; i++) {
-			cards.add(new Room(i));
+		for (int i=cards.length-1; i>0; i--) {
+			int j = random.nextInt(i+1);
+			int tmp = cards[i];
+			cards[i] = cards[j];
+			cards[j] = tmp;
 		}
-		createEnvelope(cards);
-		//deal out the remaining cards evenly to each player
 		int i = 0;
-		while (i<cards.size()) {
+		while (i<cards.length) {
 			for (Player p : players) {
 				if (p.isPlaying()) {
-					p.dealCard(cards.get(i));
+					p.dealCard(CardSet.card(cards[i]));
 					i++;
-					if (i >= cards.size()) break;
+					if (i >= cards.length) break;
 				}
 			}
 		}
-		board = new Board(players);
+		createNotebooks();
+		board = new Board(players, random);
 		
-		gui.startGame(this);
+		controller.startGame(this);
 	}
 	
 	/**
-	 * Given a list of cards, this creates the solution envelope,
-	 * with a randomly chosen character, weapon and room within.
-	 * @param cards
+	 * Give each playing player a notebook, knowing the size of every hand and the cards in their own.
 	 */
-	public void createEnvelope(List<Card> cards) {
-		envelope = new ArrayList<Card>();
-		Collections.shuffle(cards);
-		for (Card c : cards) {
-			if (c instanceof Character) {
-				envelope.add(c);
-				cards.remove(c);
-				break;
-			}
+	private void createNotebooks() {
+		seats = new ArrayList<Player>();
+		for (Player p : players) {
+			if (p.isPlaying()) seats.add(p);
 		}
-		for (Card c : cards) {
-			if (c instanceof Weapon) {
-				envelope.add(c);
-				cards.remove(c);
-				break;
-			}
+		int[] handSizes = new int[seats.size()];
+		for (int i=0; i<handSizes.length; i++) {
+			handSizes[i] = CardSet.size(seats.get(i).getHandSet());
 		}
-		for (Card c : cards) {
-			if (c instanceof Room) {
-				envelope.add(c);
-				cards.remove(c);
-				break;
-			}
+		notebooks = new Notebook[seats.size()];
+		for (int i=0; i<notebooks.length; i++) {
+			notebooks[i] = new Notebook(handSizes);
+			notebooks[i].observeHand(i, seats.get(i).getHandSet());
 		}
+	}
+	
+	/**
+	 * Return the given playing player's notebook, or null if they are not playing.
+	 * @param player
+	 * @return
+	 */
+	public Notebook getNotebook(Player player) {
+		int seat = seats.indexOf(player);
+		return seat<0 ? null : notebooks[seat];
+	}
+	
+	/**
+	 * Return the list of players, both playing and non-playing, in turn order.
+	 * @return
+	 */
+	public List<Player> getPlayers() {
+		return players;
+	}
+	
+	/**
+	 * Return the winner of the game, or null if it is not over.
+	 * @return
+	 */
+	public Player getWinner() {
+		return winner;
+	}
+	
+	/**
+	 * Shuffle a list in place using the given random stream.
+	 * @param list
+	 * @param random
+	 */
+	public static <T> void shuffle(List<T> list, SplittableRandom random) {
+		for (int i=list.size()-1; i>0; i--) {
+			Collections.swap(list, i, random.nextInt(i+1));
+		}
+	}
+	
+	/**
+	 * This creates the solution envelope, with a randomly chosen character, weapon and room,
+	 * and returns the CardSet of all the other cards, which are left to be dealt.
+	 * @return
+	 */
+	public int createEnvelope() {
+		envelopeCharacter = CardSet.CHARACTER_BASE+random.nextInt(nChars);
+		envelopeWeapon = CardSet.WEAPON_BASE+random.nextInt(nWeapons);
+		envelopeRoom = CardSet.ROOM_BASE+random.nextInt(nRooms);
 		//for testing a correct accusation
-		//System.out.println(envelope.toString());
+		//System.out.println(CardSet.toList(getEnvelope()));
+		return CardSet.ALL & ~getEnvelope();
 	}
 	
 	/**
-	 * Given a player id and some suggested cards, this checks all other players to see
+	 * Return the solution envelope as a CardSet.
+	 * @return
+	 */
+	int getEnvelope() {
+		return (1<<envelopeCharacter)|(1<<envelopeWeapon)|(1<<envelopeRoom);
+	}
+	
+	/**
+	 * Given a player id and some suggested cards, this checks all other players in turn to see
 	 * if they possess a card that matches the suggested cards given.
+	 * The first that does shows the suggester their matching card.
 	 * @param uid
 	 * @param cards
 	 * @return
 	 */
-	public String compareToOtherPlayers(int uid, Card[] cards) {
+	public SuggestionResult compareToOtherPlayers(int uid, Card[] cards) {
 		int pId = 0;
 		for (int j=0; j<players.size(); j++) {
 			if (players.get(j).getUid()==uid) {
@@ -163,60 +302,92 @@ public class Game {
 				break;
 			}
 		}
-		int i = pId +1;
-		String output ="";
-		while (i!=pId) {
-			if (i>=players.size()) {
-				i=0;
-			} else {
-				if (players.get(i).isPlaying()) {
-					output += "\nComparing to Player "
-							+ players.get(i).getPlayerName() + "\n";
-					output += players.get(i).compareCards(cards);
-					if (!output.endsWith("no matching cards")) return output;
-				}
-				i++;
+		Player suggester = players.get(pId);
+		int suggested = CardSet.of(cards);
+		List<Player> passed = new ArrayList<Player>();
+		for (int i=(pId+1)%players.size(); i!=pId; i=(i+1)%players.size()) {
+			Player p = players.get(i);
+			if (!p.isPlaying()) continue;
+			int match = p.matching(suggested);
+			if (match!=0) {
+				Card shown = CardSet.first(match);
+				suggester.see(shown);
+				recordSuggestion(suggester, suggested, p, shown.ordinal());
+				return new SuggestionResult(suggester, cards, passed, p, shown);
 			}
+			passed.add(p);
 		}
-		output+="\nComparation complete, no matches were found";
-		return output;
+		recordSuggestion(suggester, suggested, null, -1);
+		return new SuggestionResult(suggester, cards, passed, null, null);
 	}
 	
 	/**
-	 * When a player makes a specific accusation, this checks the accusation
-	 * against the envelope to see if the player wins or is eliminated.
+	 * Record the outcome of a suggestion in every notebook.
+	 * Everyone sees who refuted it, but only the suggester sees the card shown.
+	 * @param suggester
+	 * @param suggested
+	 * @param refuter the refuting player, or null if nobody could
+	 * @param shown the ordinal of the card shown, or -1
+	 */
+	private void recordSuggestion(Player suggester, int suggested, Player refuter, int shown) {
+		int from = seats.indexOf(suggester);
+		if (from<0) return;
+		int by = refuter==null ? -1 : seats.indexOf(refuter);
+		for (int i=0; i<notebooks.length; i++) {
+			notebooks[i].observeSuggestion(from, suggested, by, i==from ? shown : -1);
+		}
+	}
+	
+	/**
+	 * The given player makes a suggestion from the room they are in.
+	 * The suggested weapon and character are moved into that room,
+	 * and the other players are checked for matching cards.
+	 * @param player
+	 * @param weapon
+	 * @param character
+	 * @return
+	 */
+	public SuggestionResult suggest(Player player, String weapon, String character) {
+		String room = board.getLoc(player.getX(), player.getY());
+		board.moveObj(weapon,room); //move this weapon to this room
+		board.moveObj(character,room); //move this character to this room
+		Card[] cards = new Card[]{Room.valueOf(room),Weapon.valueOf(weapon),Character.valueOf(character)};
+		return compareToOtherPlayers(player.getUid(), cards);
+	}
+	
+	/**
+	 * The given player makes an accusation. If it is wrong, they are eliminated.
 	 * @param player
 	 * @param room
 	 * @param character
 	 * @param weapon
 	 * @return
 	 */
-	public String checkWin(Player player, Room room, Character character, Weapon weapon) {
-		String output = "";
-		if (envelope.get(0).equals(character)) {
-			output+=("Character " + character.toString() + " was correct!");
-		} else {
-			output+=("Character " + character.toString() + " was WRONG!");
-			return output;
+	public AccusationResult accuse(Player player, Room room, Character character, Weapon weapon) {
+		AccusationResult result = checkWin(player, room, character, weapon);
+		if (!result.isCorrect()) {
+			player.eliminate();
 		}
-		if (envelope.get(1).equals(weapon)) {
-			output+=("\nWeapon " + weapon.toString() + " was correct!");
-		} else {
-			output+=("\nWeapon " + weapon.toString() + " was WRONG!");
-			return output;
-		}
-		if (envelope.get(2).equals(room)) {
-			output+=("\nRoom " + room.toString() + " was correct!");
-		} else {
-			output+=("\nRoom " + room.toString() + " was WRONG!");
-			return output;
-		}
-		output+=("\nCONGRATULATIONS TO PLAYER " + player.getUid());
-		output+=("\nGAME OVER");
-		winner = player;
-		return output;
+		return result;
 	}
 	
-	
+	/**
+	 * When a player makes a specific accusation, this checks the accusation
+	 * against the envelope, and makes the player the winner if it is correct.
+	 * @param player
+	 * @param room
+	 * @param character
+	 * @param weapon
+	 * @return
+	 */
+	public AccusationResult checkWin(Player player, Room room, Character character, Weapon weapon) {
+		AccusationResult result = new AccusationResult(player, character, weapon, room,
+				character.ordinal()==envelopeCharacter, weapon.ordinal()==envelopeWeapon,
+				room.ordinal()==envelopeRoom);
+		if (result.isCorrect()) {
+			winner = player;
+		}
+		return result;
+	}
 	
 }
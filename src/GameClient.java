@@ -0,0 +1,183 @@
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+
+/**
+ * The GameClient is a simple client for a GameServer, sending commands and reading back
+ * what the server says a line at a time, or as WireProtocol messages once it has asked for them.
+ * It is used to test the server over the loopback interface,
+ * and run as a program it plays from the console, printing everything the server sends.
+ * Usage: GameClient [host] [port]
+ * @author Edwin
+ *
+ */
+public class GameClient implements Closeable {
+
+	private static final int bufferSize = 1024;
+
+	private Socket socket;
+	private InputStream input;
+	//what has been read but not yet received, between its position and limit
+	private ByteBuffer in = ByteBuffer.allocate(bufferSize);
+	private Writer out;
+	private boolean binary = false;
+	private WireProtocol.Message message = new WireProtocol.Message();
+	private WireProtocol.Receiver board = new WireProtocol.Receiver();
+
+	/**
+	 * Connect to the server, giving up on any read after the given number of milliseconds,
+	 * or never if it is 0.
+	 * @param host
+	 * @param port
+	 * @param timeout
+	 * @throws IOException
+	 */
+	public GameClient(String host, int port, int timeout) throws IOException {
+		socket = new Socket(host, port);
+		socket.setSoTimeout(timeout);
+		input = socket.getInputStream();
+		in.flip();
+		out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+	}
+
+	public static void main(String[] args) throws IOException {
+		String host = args.length>0 ? args[0] : "localhost";
+		int port = args.length>1 ? Integer.parseInt(args[1]) : 4560;
+		final GameClient client = new GameClient(host, port, 0);
+		Thread printer = new Thread(new Runnable() {
+			public void run() {
+				try {
+					for (String line = client.receive(); line!=null; line = client.receive()) {
+						System.out.println(line);
+					}
+				} catch (IOException e) {
+					System.out.println("Disconnected");
+				}
+				System.exit(0);
+			}
+		});
+		printer.setDaemon(true);
+		printer.start();
+		BufferedReader console = new BufferedReader(new InputStreamReader(System.in));
+		for (String line = console.readLine(); line!=null; line = console.readLine()) {
+			client.send(line);
+		}
+		client.close();
+	}
+
+	/**
+	 * Send a command to the server.
+	 * @param line
+	 * @throws IOException
+	 */
+	public void send(String line) throws IOException {
+		out.write(line);
+		out.write('\n');
+		out.flush();
+	}
+
+	/**
+	 * Ask the server for the WireProtocol instead of lines of text, from the next message on.
+	 * @throws IOException
+	 */
+	public void useBinary() throws IOException {
+		send("BINARY");
+		await("BINARY");
+		binary = true;
+	}
+
+	/**
+	 * Return the next line from the server, or null if it has closed the connection.
+	 * @return
+	 * @throws IOException
+	 */
+	public String receive() throws IOException {
+		if (binary) throw new IllegalStateException("Using the binary protocol");
+		while (true) {
+			for (int i=in.position(); i<in.limit(); i++) {
+				if (in.get(i)!='\n') continue;
+				String line = new String(in.array(), in.position(), i-in.position(), StandardCharsets.UTF_8);
+				in.position(i+1);
+				return line;
+			}
+			if (!fill()) return null;
+		}
+	}
+
+	/**
+	 * Return the next message from the server, or null if it has closed the connection.
+	 * The message is reused by the next call. Board updates are applied, see getTiles(),
+	 * and acknowledged.
+	 * @return
+	 * @throws IOException
+	 */
+	public WireProtocol.Message receiveMessage() throws IOException {
+		if (!binary) throw new IllegalStateException("Not using the binary protocol");
+		while (!WireProtocol.read(in, message)) {
+			if (!fill()) return null;
+		}
+		if (message.type==WireProtocol.BOARD && board.apply(message)) send("ACK " + message.update);
+		return message;
+	}
+
+	/**
+	 * Skip messages from the server until one of the given type, and return it.
+	 * @param type
+	 * @return
+	 * @throws IOException
+	 */
+	public WireProtocol.Message await(int type) throws IOException {
+		for (WireProtocol.Message m = receiveMessage(); m!=null; m = receiveMessage()) {
+			if (m.type==type) return m;
+		}
+		throw new IOException("Connection closed waiting for message " + type);
+	}
+
+	/**
+	 * Return the token positions from the latest board update, which must not be changed.
+	 * @return
+	 */
+	public int[] getTiles() {
+		return board.getTiles();
+	}
+
+	/**
+	 * Read more from the server, returning false if it has closed the connection.
+	 * @return
+	 * @throws IOException
+	 */
+	private boolean fill() throws IOException {
+		in.compact();
+		if (!in.hasRemaining()) throw new IOException("Message too long");
+		int n = input.read(in.array(), in.position(), in.remaining());
+		if (n>0) in.position(in.position()+n);
+		in.flip();
+		return n>0;
+	}
+
+	/**
+	 * Skip lines from the server until one starting with the given word, and return it.
+	 * @param word
+	 * @return
+	 * @throws IOException
+	 */
+	public String await(String word) throws IOException {
+		for (String line = receive(); line!=null; line = receive()) {
+			if (line.equals(word) || line.startsWith(word+" ")) return line;
+		}
+		throw new IOException("Connection closed waiting for " + word);
+	}
+
+	@Override
+	public void close() throws IOException {
+		socket.close();
+	}
+}
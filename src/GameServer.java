@@ -0,0 +1,622 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+
+/**
+ * The GameServer hosts a networked game. It owns the game and its board,
+ * and remote players send their moves, suggestions and accusations over TCP.
+ * Every connection is served by one thread, which waits on a Selector and never blocks on
+ * any one client, so hundreds of players and spectators share that thread.
+ * The game needs no thread of its own either, as each command that ends a turn
+ * starts the next one on the selector thread.
+ *
+ * The protocol is one command per line, words separated by spaces. Clients send:
+ * JOIN name, MOVE x y, SUGGEST weapon character, ACCUSE room character weapon, END.
+ * The server sends: WELCOME character, WATCHING, JOINED character name, HAND cards...,
+ * TURN character die, MOVED character x y remaining, SUGGESTED character room weapon suspect,
+ * PASSED character, REFUTED character, SHOWN character card, UNREFUTED,
+ * ACCUSED character room suspect weapon, ELIMINATED character, WINNER character,
+ * NOWINNER if every player was eliminated, ERROR message.
+ * The card shown in a refutation is only sent to the suggester and the refuter,
+ * everyone else is only told who refuted.
+ * A client that sends BINARY is answered with a last line, BINARY, and is then sent the
+ * WireProtocol instead, with moves as board updates, which it acknowledges with ACK update.
+ * Once the game has all its players, anyone else joining watches.
+ * Usage: GameServer [players] [port]
+ * @author Edwin
+ *
+ */
+public class GameServer implements Controller, Runnable {
+
+	private static final int nChars = 6;
+	private static final int minPlayers = 3;
+	//longest command accepted, anything longer closes the connection
+	private static final int maxLine = 256;
+	//room for a WireProtocol message of fixed length, and for a board update
+	private static final int eventBytes = 8;
+	private static final int boardBytes = 6+2*WireProtocol.nTokens;
+
+	private int nPlayers;
+	private SplittableRandom random;
+	private Selector selector;
+	private ServerSocketChannel server;
+	private volatile boolean running = true;
+	private List<Connection> connections = new ArrayList<Connection>();
+	//the connection playing each character, filled in as players join
+	private Connection[] seats = new Connection[nChars];
+	private int joined = 0;
+	//lines waiting to be written by the selector thread, from any thread
+	private ConcurrentLinkedQueue<Outgoing> outbox = new ConcurrentLinkedQueue<Outgoing>();
+	private Game game;
+	//the player whose turn it is, or null between turns; only they may send commands
+	private Player turn;
+	private int die;
+	private boolean suggested;
+
+	/**
+	 * Listen for players on the given port, or any free port if it is 0.
+	 * The game starts once the given number of players have joined.
+	 * @param nPlayers
+	 * @param port
+	 * @param random
+	 * @throws IOException
+	 */
+	public GameServer(int nPlayers, int port, SplittableRandom random) throws IOException {
+		if (nPlayers<minPlayers || nPlayers>nChars) throw new IllegalArgumentException("Players must be 3-6");
+		this.nPlayers = nPlayers;
+		this.random = random;
+		selector = Selector.open();
+		server = ServerSocketChannel.open();
+		server.bind(new InetSocketAddress(port));
+		server.configureBlocking(false);
+		server.register(selector, SelectionKey.OP_ACCEPT);
+	}
+
+	public static void main(String[] args) throws IOException {
+		int nPlayers = args.length>0 ? Integer.parseInt(args[0]) : 3;
+		int port = args.length>1 ? Integer.parseInt(args[1]) : 4560;
+		GameServer server = new GameServer(nPlayers, port, new SplittableRandom());
+		System.out.println("Waiting for " + nPlayers + " players on port " + server.getPort());
+		server.run();
+	}
+
+	/**
+	 * Start serving on a new thread, and return it.
+	 * @return
+	 */
+	public Thread start() {
+		Thread thread = new Thread(this, "GameServer");
+		thread.setDaemon(true);
+		thread.start();
+		return thread;
+	}
+
+	/**
+	 * Return the port being listened on.
+	 * @return
+	 */
+	public int getPort() {
+		return server.socket().getLocalPort();
+	}
+
+	/**
+	 * Stop serving and close every connection. Safe to call from any thread.
+	 */
+	public void close() {
+		running = false;
+		selector.wakeup();
+	}
+
+	/**
+	 * Serve every connection until closed.
+	 */
+	@Override
+	public void run() {
+		try {
+			while (running) {
+				selector.select();
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					if (!key.isValid()) continue;
+					if (key.isAcceptable()) {
+						accept();
+						continue;
+					}
+					Connection c = (Connection)key.attachment();
+					if (key.isReadable()) c.read();
+					if (key.isValid() && key.isWritable()) c.write();
+				}
+				deliver();
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("Server failed", e);
+		} finally {
+			for (Connection c : connections) c.close();
+			try {
+				server.close();
+				selector.close();
+			} catch (IOException e) {
+				//closing anyway
+			}
+		}
+	}
+
+	private void accept() throws IOException {
+		SocketChannel channel = server.accept();
+		if (channel==null) return;
+		channel.configureBlocking(false);
+		Connection c = new Connection(channel);
+		c.key = channel.register(selector, SelectionKey.OP_READ, c);
+		connections.add(c);
+	}
+
+	/**
+	 * Queue every waiting line on its connections, and write what can be written without blocking.
+	 */
+	private void deliver() {
+		for (Outgoing o = outbox.poll(); o!=null; o = outbox.poll()) {
+			if (o.to!=null) {
+				o.to.queue(o);
+			} else {
+				for (Connection c : connections) c.queue(o);
+			}
+		}
+		for (Connection c : connections) {
+			if (!c.out.isEmpty()) c.write();
+		}
+		for (Iterator<Connection> it = connections.iterator(); it.hasNext();) {
+			if (it.next().closed) it.remove();
+		}
+	}
+
+	/**
+	 * Send a line to one connection, from any thread.
+	 * @param to
+	 * @param line
+	 */
+	private void send(Connection to, String line) {
+		send(to, line, null);
+	}
+
+	/**
+	 * Send a line to one connection, or the given message if it uses the WireProtocol,
+	 * from any thread. Without a message, the line is sent as a text message.
+	 * @param to
+	 * @param line
+	 * @param binary the message, not yet flipped, or null
+	 */
+	private void send(Connection to, String line, ByteBuffer binary) {
+		outbox.add(new Outgoing(to, line, binary));
+		selector.wakeup();
+	}
+
+	/**
+	 * Send a line, or the given message, to every connection, from any thread.
+	 * @param line
+	 * @param binary
+	 */
+	private void broadcast(String line, ByteBuffer binary) {
+		send(null, line, binary);
+	}
+
+	/**
+	 * Send the token positions to every connection using the WireProtocol,
+	 * as a delta against the last they acknowledged.
+	 */
+	private void sendBoard() {
+		int[] tiles = new int[WireProtocol.nTokens];
+		game.board.getTokenTiles(tiles);
+		outbox.add(new Outgoing(tiles));
+		selector.wakeup();
+	}
+
+	/**
+	 * Return a buffer for one WireProtocol message of fixed length.
+	 * @return
+	 */
+	private static ByteBuffer event() {
+		return ByteBuffer.allocate(eventBytes);
+	}
+
+	/**
+	 * Carry out a command from a connection.
+	 * @param c
+	 * @param line
+	 */
+	private void handle(Connection c, String line) {
+		String[] words = line.trim().split("\\s+");
+		String command = words[0].toUpperCase();
+		if (command.equals("JOIN")) {
+			join(c, line.trim().substring(words[0].length()).trim());
+			return;
+		}
+		if (command.equals("BINARY")) {
+			Outgoing reply = new Outgoing(c, "BINARY", null);
+			reply.startsBinary = true;
+			outbox.add(reply);
+			if (game!=null) sendBoard();
+			return;
+		}
+		if (command.equals("ACK") && words.length==2) {
+			c.ack(parse(words[1]));
+			return;
+		}
+		Player p = turn;
+		if (c.player==null) {
+			send(c, "ERROR Join the game first");
+		} else if (p!=c.player) {
+			send(c, "ERROR It is not your turn");
+		} else if (command.equals("MOVE") && words.length==3) {
+			move(p, parse(words[1]), parse(words[2]));
+		} else if (command.equals("SUGGEST") && words.length==3) {
+			suggest(p, words[1], words[2]);
+		} else if (command.equals("ACCUSE") && words.length==4) {
+			accuse(p, words[1], words[2], words[3]);
+		} else if (command.equals("END")) {
+			endTurn();
+		} else {
+			send(c, "ERROR Unknown command: " + line);
+		}
+	}
+
+	/**
+	 * Seat a new player, starting the game once all have joined, or let them watch if it is full.
+	 * @param c
+	 * @param name
+	 */
+	private void join(Connection c, String name) {
+		if (c.player!=null || c.watching) {
+			send(c, "ERROR Already joined");
+			return;
+		}
+		if (joined==nPlayers) {
+			c.watching = true;
+			send(c, "WATCHING");
+			return;
+		}
+		if (name.isEmpty()) name = "Player " + (joined+1);
+		c.player = new Player(joined, name);
+		seats[joined++] = c;
+		send(c, "WELCOME " + c.player.getName());
+		broadcast("JOINED " + c.player.getName() + " " + name, null);
+		if (joined==nPlayers) {
+			new Game(this, random).start();
+		}
+	}
+
+	private void move(Player p, int x, int y) {
+		int moves = game.board.movePlayer(p, x, y, die);
+		if (moves<0) {
+			send(seats[p.getUid()], "ERROR Invalid move");
+			return;
+		}
+		die -= moves;
+		sendBoard();
+		ByteBuffer left = event();
+		WireProtocol.writeRoll(left, p.getUid(), die);
+		broadcast("MOVED " + p.getName() + " " + x + " " + y + " " + die, left);
+	}
+
+	/**
+	 * Make a suggestion, telling the card shown only to the players who see it.
+	 * @param p
+	 * @param weapon
+	 * @param character
+	 */
+	private void suggest(Player p, String weapon, String character) {
+		Connection c = seats[p.getUid()];
+		if (suggested) {
+			send(c, "ERROR Already suggested this turn");
+		} else if (!game.board.isRoom(p.getX(), p.getY())) {
+			send(c, "ERROR Not in a room");
+		} else if (!Weapon.isWeapon(weapon) || !Character.isCharacter(character)) {
+			send(c, "ERROR Unknown card");
+		} else {
+			suggested = true;
+			SuggestionResult result = game.suggest(p, weapon, character);
+			Card[] cards = result.getSuggested();
+			ByteBuffer suggestion = event();
+			WireProtocol.writeSuggestion(suggestion, p.getUid(), cards[2].ordinal(), cards[1].ordinal(),
+					cards[0].ordinal());
+			broadcast("SUGGESTED " + p.getName() + " " + cards[0] + " " + cards[1] + " " + cards[2], suggestion);
+			//the suggested character and weapon are moved to the room
+			sendBoard();
+			for (Player passed : result.getPassed()) {
+				ByteBuffer pass = event();
+				WireProtocol.writePass(pass, passed.getUid());
+				broadcast("PASSED " + passed.getName(), pass);
+			}
+			if (!result.isRefuted()) {
+				broadcast("UNREFUTED", null);
+				return;
+			}
+			String refuter = result.getRefuter().getName();
+			for (Connection other : connections) {
+				Card shown = result.getShownTo(other.player);
+				ByteBuffer refutation = event();
+				WireProtocol.writeRefutation(refutation, result.getRefuter().getUid(),
+						shown==null ? -1 : shown.ordinal());
+				send(other, shown==null ? "REFUTED " + refuter : "SHOWN " + refuter + " " + shown, refutation);
+			}
+		}
+	}
+
+	private void accuse(Player p, String room, String character, String weapon) {
+		if (!Room.isRoom(room) || !Character.isCharacter(character) || !Weapon.isWeapon(weapon)) {
+			send(seats[p.getUid()], "ERROR Unknown card");
+			return;
+		}
+		AccusationResult result = game.accuse(p, Room.valueOf(room), Character.valueOf(character),
+				Weapon.valueOf(weapon));
+		ByteBuffer accusation = event();
+		WireProtocol.writeAccusation(accusation, p.getUid(), result.getCharacter().ordinal(),
+				result.getWeapon().ordinal(), result.getRoom().ordinal(), result.isCorrect());
+		broadcast("ACCUSED " + p.getName() + " " + result.getRoom() + " " + result.getCharacter()
+				+ " " + result.getWeapon(), accusation);
+		if (result.isCorrect()) {
+			broadcast("WINNER " + p.getName(), win(p));
+		} else {
+			broadcast("ELIMINATED " + p.getName(), elimination(p));
+		}
+		endTurn();
+	}
+
+	private void endTurn() {
+		Player p = turn;
+		turn = null;
+		game.endTurn(p);
+	}
+
+	private static ByteBuffer elimination(Player p) {
+		ByteBuffer message = event();
+		WireProtocol.writeElimination(message, p.getUid());
+		return message;
+	}
+
+	private static ByteBuffer win(Player p) {
+		ByteBuffer message = event();
+		WireProtocol.writeWin(message, p.getUid());
+		return message;
+	}
+
+	private static int parse(String number) {
+		try {
+			return Integer.parseInt(number);
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * The players are those who joined, in the order they joined, followed by the other characters.
+	 */
+	@Override
+	public List<Player> initialisePlayers() {
+		List<Player> players = new ArrayList<Player>();
+		for (int i=0; i<nChars; i++) {
+			players.add(i<nPlayers ? seats[i].player : new Player(i));
+		}
+		return players;
+	}
+
+	/**
+	 * Tell each player their hand, and only theirs.
+	 */
+	@Override
+	public void startGame(Game game) {
+		this.game = game;
+		for (int i=0; i<nPlayers; i++) {
+			StringBuilder hand = new StringBuilder("HAND");
+			for (Card card : seats[i].player.getHand()) hand.append(' ').append(card);
+			ByteBuffer binary = event();
+			WireProtocol.writeHand(binary, i, seats[i].player.getHandSet());
+			send(seats[i], hand.toString(), binary);
+		}
+		sendBoard();
+	}
+
+	/**
+	 * Tell everyone whose turn it is. Players who have left are eliminated when their turn comes.
+	 */
+	@Override
+	public void takeTurn(Player p, int die) {
+		Connection c = seats[p.getUid()];
+		if (c.closed && !p.isEliminated()) {
+			p.eliminate();
+			broadcast("ELIMINATED " + p.getName(), elimination(p));
+		}
+		if (p.isEliminated()) {
+			game.endTurn(p);
+			return;
+		}
+		this.die = die;
+		suggested = false;
+		turn = p;
+		ByteBuffer roll = event();
+		WireProtocol.writeRoll(roll, p.getUid(), die);
+		broadcast("TURN " + p.getName() + " " + die, roll);
+	}
+
+	@Override
+	public void endGame(Player winner) {
+		if (winner==null) {
+			ByteBuffer message = event();
+			WireProtocol.writeWin(message, -1);
+			broadcast("NOWINNER", message);
+		} else {
+			broadcast("WINNER " + winner.getName(), win(winner));
+		}
+	}
+
+	/**
+	 * A line to send, to one connection or to all of them if it is null,
+	 * with the message sent instead to connections using the WireProtocol.
+	 * A board update is only sent to those connections, each as its own delta.
+	 */
+	private static class Outgoing {
+
+		private Connection to;
+		private String line;
+		private ByteBuffer data;
+		private ByteBuffer binary; //null until a line without a message is sent as text
+		private int[] tiles; //the token positions, for a board update
+		private boolean startsBinary; //the connection uses the WireProtocol after this line
+
+		Outgoing(Connection to, String line, ByteBuffer binary) {
+			this.to = to;
+			this.line = line;
+			data = ByteBuffer.wrap((line+"\n").getBytes(StandardCharsets.UTF_8));
+			if (binary!=null) {
+				binary.flip();
+				this.binary = binary;
+			}
+		}
+
+		Outgoing(int[] tiles) {
+			this.tiles = tiles;
+		}
+
+		/**
+		 * Return the message to send to a connection using the WireProtocol.
+		 * @return
+		 */
+		ByteBuffer getBinary() {
+			if (binary==null) {
+				binary = ByteBuffer.allocate(2+WireProtocol.maxText);
+				WireProtocol.writeText(binary, line);
+				binary.flip();
+			}
+			return binary.duplicate();
+		}
+	}
+
+	/**
+	 * A client's connection, with the part of a line read so far and the data waiting to be written.
+	 */
+	private class Connection {
+
+		private SocketChannel channel;
+		private SelectionKey key;
+		private ByteBuffer in = ByteBuffer.allocate(maxLine);
+		private ArrayDeque<ByteBuffer> out = new ArrayDeque<ByteBuffer>();
+		private Player player;
+		private boolean watching = false;
+		private volatile boolean closed = false;
+		//board updates for this connection, or null if it is sent text
+		private WireProtocol.Sender sender;
+
+		Connection(SocketChannel channel) {
+			this.channel = channel;
+		}
+
+		/**
+		 * Read what has arrived, and carry out each complete line.
+		 */
+		void read() {
+			try {
+				if (channel.read(in)<0) {
+					close();
+					return;
+				}
+			} catch (IOException e) {
+				close();
+				return;
+			}
+			in.flip();
+			int start = 0;
+			for (int i=0; i<in.limit(); i++) {
+				if (in.get(i)!='\n') continue;
+				String line = new String(in.array(), start, i-start, StandardCharsets.UTF_8);
+				start = i+1;
+				if (!line.trim().isEmpty()) handle(this, line);
+			}
+			in.position(start);
+			in.compact();
+			if (!in.hasRemaining()) close(); //too long to be a command
+		}
+
+		/**
+		 * Queue what to send this connection, the line or its message,
+		 * or a board update only if it uses the WireProtocol and something has moved.
+		 * @param o
+		 */
+		void queue(Outgoing o) {
+			if (closed) return;
+			if (o.tiles!=null) {
+				if (sender==null) return;
+				ByteBuffer update = ByteBuffer.allocate(boardBytes);
+				if (sender.write(update, o.tiles)) {
+					update.flip();
+					out.add(update);
+				}
+			} else if (sender!=null) {
+				out.add(o.getBinary());
+			} else {
+				out.add(o.data.duplicate());
+				if (o.startsBinary) sender = new WireProtocol.Sender();
+			}
+		}
+
+		/**
+		 * The client has the given board update.
+		 * @param update
+		 */
+		void ack(int update) {
+			if (sender!=null) sender.ack(update);
+		}
+
+		/**
+		 * Write as much as can be written without blocking, waiting for the channel to be writable
+		 * again if anything is left over.
+		 */
+		void write() {
+			try {
+				while (!out.isEmpty()) {
+					channel.write(out.peek());
+					if (out.peek().hasRemaining()) break;
+					out.poll();
+				}
+			} catch (IOException e) {
+				close();
+				return;
+			}
+			if (key.isValid()) {
+				key.interestOps(out.isEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_READ|SelectionKey.OP_WRITE);
+			}
+		}
+
+		/**
+		 * Close the connection. A player leaving during their turn is eliminated, so the game goes on.
+		 */
+		void close() {
+			if (closed) return;
+			closed = true;
+			if (running && player!=null && player==turn) {
+				player.eliminate();
+				broadcast("ELIMINATED " + player.getName(), elimination(player));
+				endTurn();
+			}
+			out.clear();
+			key.cancel();
+			try {
+				channel.close();
+			} catch (IOException e) {
+				//already gone
+			}
+		}
+	}
+}
@@ -0,0 +1,317 @@
+import java.awt.Image;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import javax.imageio.ImageIO;
+
+
+/**
+ * The ImageCache is the game's asset manager. It holds every image the game uses,
+ * shared by all the cards and tokens that show it, and each is only decoded once.
+ * Images are read from the packed bundle cluedo-assets.zip if there is one,
+ * otherwise from the resources folder, found on the classpath, in the working directory
+ * or next to the game's classes, so starting from another directory still works.
+ * Names are matched ignoring case, as the files are named in lower case.
+ * preloadGameAssets() decodes every image in parallel in the background,
+ * so they are ready by the time the board is first drawn.
+ * Run as a program to pack the resources folder into the bundle.
+ * @author Edwin
+ *
+ */
+public class ImageCache {
+
+	private static final String RESOURCE_DIR = "resources";
+	private static final String BUNDLE = "cluedo-assets.zip";
+	private static final String[] IMAGE_TYPES = {".gif",".png",".jpg"};
+	//images decoded or being decoded, by lower case name
+	private static final ConcurrentHashMap<String,CompletableFuture<Image>> images =
+			new ConcurrentHashMap<String,CompletableFuture<Image>>();
+	//the bundle's contents, or the resources folder's files, by lower case name, found on first use
+	private static Map<String,byte[]> bundle;
+	private static Map<String,File> files;
+	private static boolean located = false;
+
+	/**
+	 * Return the image with the given filename, loading it if it has not been loaded yet,
+	 * or waiting for it if it is being preloaded.
+	 * @param filename
+	 * @return
+	 */
+	public static Image get(String filename) {
+		try {
+			return future(filename, false).join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) throw (RuntimeException)e.getCause();
+			throw e;
+		}
+	}
+
+	/**
+	 * Start decoding the given images in the background, and return straight away.
+	 * Once all are decoded, how long it took is reported.
+	 * @param filenames
+	 */
+	public static void preload(List<String> filenames) {
+		final long start = System.nanoTime();
+		final int n = filenames.size();
+		List<CompletableFuture<Image>> loading = new ArrayList<CompletableFuture<Image>>();
+		for (String filename : filenames) {
+			loading.add(future(filename, true));
+		}
+		CompletableFuture.allOf(loading.toArray(new CompletableFuture<?>[0])).whenComplete(
+				new BiConsumer<Void,Throwable>() {
+			public void accept(Void result, Throwable error) {
+				if (error!=null) return; //reported again when the image is asked for
+				logTiming(String.format("Decoded %d images in %.0f ms", n, (System.nanoTime()-start)/1e6));
+			}
+		});
+	}
+
+	/**
+	 * Start decoding every image the game shows: the cards, the board and the die faces.
+	 */
+	public static void preloadGameAssets() {
+		List<String> filenames = new ArrayList<String>();
+		filenames.add("board.jpg");
+		for (int i=0; i<CardSet.nCards; i++) {
+			filenames.add(CardSet.card(i).toString()+".gif");
+		}
+		for (int i=0; i<=6; i++) {
+			filenames.add("Dice/"+i+".png");
+		}
+		preload(filenames);
+	}
+
+	/**
+	 * Print a startup event, with the time since the program started.
+	 * @param event
+	 */
+	public static void logTiming(String event) {
+		long uptime = ManagementFactory.getRuntimeMXBean().getUptime();
+		System.out.println(event + " (" + uptime + " ms after startup)");
+	}
+
+	/**
+	 * Load an image, using a given filename.
+	 *
+	 * @param filename
+	 * @return
+	 */
+	public static Image loadImage(String filename) {
+		Image img;
+		try (InputStream in = open(filename)) {
+			img = ImageIO.read(in);
+		} catch (IOException e) {
+			throw new RuntimeException("Unable to load image: " + filename, e);
+		}
+		if (img==null) throw new RuntimeException("Unable to load image: " + filename);
+		return img;
+	}
+
+	/**
+	 * Return the image being loaded with the given filename, starting to load it if it is not,
+	 * either in the background or on this thread.
+	 * @param filename
+	 * @param background
+	 * @return
+	 */
+	private static CompletableFuture<Image> future(final String filename, boolean background) {
+		String key = filename.toLowerCase(Locale.ROOT);
+		CompletableFuture<Image> img = images.get(key);
+		if (img!=null) return img;
+		final CompletableFuture<Image> result = new CompletableFuture<Image>();
+		img = images.putIfAbsent(key, result);
+		if (img!=null) return img;
+		if (background) {
+			CompletableFuture.runAsync(new Runnable() {
+				public void run() {
+					complete(result, filename);
+				}
+			});
+		} else {
+			complete(result, filename);
+		}
+		return result;
+	}
+
+	private static void complete(CompletableFuture<Image> img, String filename) {
+		try {
+			img.complete(loadImage(filename));
+		} catch (RuntimeException e) {
+			img.completeExceptionally(e);
+		}
+	}
+
+	/**
+	 * Open the image with the given filename from the bundle, the resources folder or the classpath.
+	 * @param filename
+	 * @return
+	 * @throws IOException
+	 */
+	private static InputStream open(String filename) throws IOException {
+		locate();
+		String key = filename.toLowerCase(Locale.ROOT);
+		if (bundle!=null) {
+			byte[] data = bundle.get(key);
+			if (data!=null) return new ByteArrayInputStream(data);
+		}
+		if (files!=null) {
+			File file = files.get(key);
+			if (file!=null) return new FileInputStream(file);
+		}
+		InputStream in = ImageCache.class.getResourceAsStream("/"+RESOURCE_DIR+"/"+filename);
+		if (in==null) in = ImageCache.class.getResourceAsStream("/"+RESOURCE_DIR+"/"+key);
+		if (in==null) throw new IOException("Missing image: " + filename);
+		return in;
+	}
+
+	/**
+	 * Find the bundle, or failing that the resources folder, the first time an image is needed.
+	 */
+	private static synchronized void locate() {
+		if (located) return;
+		located = true;
+		try {
+			InputStream in = ImageCache.class.getResourceAsStream("/"+BUNDLE);
+			if (in==null) {
+				File file = find(BUNDLE);
+				if (file!=null) in = new FileInputStream(file);
+			}
+			if (in!=null) {
+				bundle = readBundle(in);
+				return;
+			}
+		} catch (IOException e) {
+			bundle = null; //fall back on the loose files
+		}
+		File dir = find(RESOURCE_DIR);
+		if (dir!=null) {
+			files = new HashMap<String,File>();
+			index(dir, "", files);
+		}
+	}
+
+	/**
+	 * Return the file with the given name in the working directory, or next to the game's classes,
+	 * or in the directory above them, or null if there is none.
+	 * @param name
+	 * @return
+	 */
+	private static File find(String name) {
+		List<File> dirs = new ArrayList<File>();
+		dirs.add(new File("."));
+		try {
+			//the classes may come from somewhere without a location, leaving only the working directory
+			CodeSource source = ImageCache.class.getProtectionDomain().getCodeSource();
+			URL location = source==null ? null : source.getLocation();
+			if (location!=null) {
+				File classes = new File(location.toURI());
+				if (classes.isFile()) classes = classes.getParentFile();
+				dirs.add(classes);
+				if (classes.getParentFile()!=null) dirs.add(classes.getParentFile());
+			}
+		} catch (URISyntaxException | IllegalArgumentException | SecurityException e) {
+			//not a file, so only the working directory then
+		}
+		for (File dir : dirs) {
+			File file = new File(dir, name);
+			if (file.exists()) return file;
+		}
+		return null;
+	}
+
+	/**
+	 * Add every image in a directory and its subdirectories to the index, by lower case relative path.
+	 * @param dir
+	 * @param prefix
+	 * @param index
+	 */
+	private static void index(File dir, String prefix, Map<String,File> index) {
+		File[] contents = dir.listFiles();
+		if (contents==null) return;
+		for (File file : contents) {
+			if (file.isDirectory()) {
+				index(file, prefix+file.getName()+"/", index);
+			} else if (isImage(file.getName())) {
+				index.put((prefix+file.getName()).toLowerCase(Locale.ROOT), file);
+			}
+		}
+	}
+
+	private static boolean isImage(String name) {
+		String lower = name.toLowerCase(Locale.ROOT);
+		for (String type : IMAGE_TYPES) {
+			if (lower.endsWith(type)) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Read every entry of a bundle into memory, by lower case name.
+	 * @param in
+	 * @return
+	 * @throws IOException
+	 */
+	private static Map<String,byte[]> readBundle(InputStream in) throws IOException {
+		Map<String,byte[]> entries = new HashMap<String,byte[]>();
+		try (ZipInputStream zip = new ZipInputStream(in)) {
+			byte[] buffer = new byte[8192];
+			for (ZipEntry entry = zip.getNextEntry(); entry!=null; entry = zip.getNextEntry()) {
+				if (entry.isDirectory()) continue;
+				ByteArrayOutputStream data = new ByteArrayOutputStream();
+				for (int n = zip.read(buffer); n>0; n = zip.read(buffer)) {
+					data.write(buffer, 0, n);
+				}
+				entries.put(entry.getName().toLowerCase(Locale.ROOT), data.toByteArray());
+			}
+		}
+		return entries;
+	}
+
+	/**
+	 * Pack every image in the resources folder into the bundle.
+	 * Usage: ImageCache [resources folder] [bundle]
+	 * @param args
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+		File dir = new File(args.length>0 ? args[0] : RESOURCE_DIR);
+		File out = new File(args.length>1 ? args[1] : BUNDLE);
+		Map<String,File> index = new HashMap<String,File>();
+		index(dir, "", index);
+		try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(out))) {
+			byte[] buffer = new byte[8192];
+			for (Map.Entry<String,File> e : index.entrySet()) {
+				zip.putNextEntry(new ZipEntry(e.getKey()));
+				try (InputStream in = new FileInputStream(e.getValue())) {
+					for (int n = in.read(buffer); n>0; n = in.read(buffer)) {
+						zip.write(buffer, 0, n);
+					}
+				}
+				zip.closeEntry();
+			}
+		}
+		System.out.println("Packed " + index.size() + " images into " + out);
+	}
+}
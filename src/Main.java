@@ -2,6 +2,8 @@
 public class Main {
 	
 	public static void main(String[] args) {
-		new Game().play();
+		//decode the images while the players are being chosen
+		ImageCache.preloadGameAssets();
+		new Game(new GUI()).play();
 	}
 }
@@ -0,0 +1,306 @@
+import java.util.Arrays;
+
+
+/**
+ * The Notebook is one player's detective notebook. It deduces, from what that player has seen,
+ * which cards each seat has, does not have, or might have, and so which cards might be in the envelope.
+ * Each seat, and the envelope, is an owner with a known number of cards, and
+ * every card belongs to exactly one owner.
+ * A refutation the player did not see becomes a clause that the refuter has one of the suggested cards.
+ * Facts are CardSets, and each new fact is propagated only to the owners it changes,
+ * so an update never rescans the history of the game.
+ * @author Edwin
+ *
+ */
+public class Notebook {
+
+	private int nSeats;
+	private int envelope; //the owner index of the envelope, after the seats
+	private int[] size; //number of cards each owner holds
+	private int[] has; //cards each owner is known to have
+	private int[] hasNot; //cards each owner is known not to have
+	private int[] owners; //for each card, a bit for each owner that might have it
+	//for each owner, CardSets of which they must have at least one
+	private int[][] clauses;
+	private int[] nClauses;
+	//owners whose facts have changed and need propagating
+	private int[] queue;
+	private int queued; //bit for each owner in the queue
+	private int head = 0;
+	private int tail = 0;
+
+	private static final int envelopeSize = 3;
+
+	/**
+	 * Create a notebook for a game where each seat holds the given number of cards.
+	 * @param handSizes
+	 */
+	public Notebook(int[] handSizes) {
+		nSeats = handSizes.length;
+		envelope = nSeats;
+		int nOwners = nSeats+1;
+		size = Arrays.copyOf(handSizes, nOwners);
+		size[envelope] = envelopeSize;
+		has = new int[nOwners];
+		hasNot = new int[nOwners];
+		owners = new int[CardSet.nCards];
+		Arrays.fill(owners, (1<<nOwners)-1);
+		clauses = new int[nOwners][4];
+		nClauses = new int[nOwners];
+		queue = new int[nOwners];
+	}
+
+	/**
+	 * Create a copy of another notebook, which can be read on another thread
+	 * while the original goes on being updated.
+	 * @param other
+	 */
+	public Notebook(Notebook other) {
+		nSeats = other.nSeats;
+		envelope = other.envelope;
+		size = other.size.clone();
+		has = other.has.clone();
+		hasNot = other.hasNot.clone();
+		owners = other.owners.clone();
+		clauses = new int[other.clauses.length][];
+		for (int i=0; i<clauses.length; i++) clauses[i] = other.clauses[i].clone();
+		nClauses = other.nClauses.clone();
+		queue = new int[other.queue.length];
+	}
+
+	/**
+	 * Record the cards in a seat's hand, which the notebook's player holds or has been shown.
+	 * @param seat
+	 * @param hand
+	 */
+	public void observeHand(int seat, int hand) {
+		setHas(seat, hand);
+		setHasNot(seat, CardSet.ALL & ~hand);
+		propagate();
+	}
+
+	/**
+	 * Record that a seat has been seen to hold a card.
+	 * @param seat
+	 * @param card the card's ordinal
+	 */
+	public void observeCard(int seat, int card) {
+		setHas(seat, 1<<card);
+		propagate();
+	}
+
+	/**
+	 * Record the outcome of a suggestion. The seats after the suggester, up to the refuter,
+	 * had none of the suggested cards, and the refuter had at least one.
+	 * @param suggester
+	 * @param suggested the CardSet suggested
+	 * @param refuter the refuting seat, or -1 if nobody could
+	 * @param shown the ordinal of the card shown, or -1 if this notebook's player did not see it
+	 */
+	public void observeSuggestion(int suggester, int suggested, int refuter, int shown) {
+		for (int seat=(suggester+1)%nSeats; seat!=suggester && seat!=refuter; seat=(seat+1)%nSeats) {
+			setHasNot(seat, suggested);
+		}
+		if (refuter>=0) {
+			if (shown>=0) {
+				setHas(refuter, 1<<shown);
+			} else {
+				addClause(refuter, suggested);
+			}
+		}
+		propagate();
+	}
+
+	/**
+	 * Return the cards that might still be in the envelope.
+	 * @return
+	 */
+	public int getEnvelopeCandidates() {
+		return CardSet.ALL & ~hasNot[envelope];
+	}
+
+	/**
+	 * Return if the whole envelope is known.
+	 * @return
+	 */
+	public boolean isSolved() {
+		return CardSet.size(has[envelope])==envelopeSize;
+	}
+
+	/**
+	 * Return the cards an owner is known to have, where the owner nSeats is the envelope.
+	 * @param owner
+	 * @return
+	 */
+	public int getHas(int owner) {
+		return has[owner];
+	}
+
+	/**
+	 * Return the cards an owner is known not to have, where the owner nSeats is the envelope.
+	 * @param owner
+	 * @return
+	 */
+	public int getHasNot(int owner) {
+		return hasNot[owner];
+	}
+
+	/**
+	 * Return the number of cards an owner holds, where the owner nSeats is the envelope.
+	 * @param owner
+	 * @return
+	 */
+	public int getSize(int owner) {
+		return size[owner];
+	}
+
+	/**
+	 * Return the clauses still open for an owner, each a CardSet of which they have at least one.
+	 * @param owner
+	 * @return
+	 */
+	public int[] getClauses(int owner) {
+		return Arrays.copyOf(clauses[owner], nClauses[owner]);
+	}
+
+	public int getSeatCount() {
+		return nSeats;
+	}
+
+	/**
+	 * Record that an owner has the given cards, so no other owner does.
+	 * @param owner
+	 * @param cards
+	 */
+	private void setHas(int owner, int cards) {
+		cards &= ~has[owner];
+		if (cards==0) return;
+		if ((cards&hasNot[owner])!=0) throw new IllegalStateException("Contradiction in notebook");
+		has[owner] |= cards;
+		enqueue(owner);
+		for (int c=cards; c!=0; c &= c-1) {
+			int card = Integer.numberOfTrailingZeros(c);
+			int others = owners[card] & ~(1<<owner);
+			owners[card] = 1<<owner;
+			for (; others!=0; others &= others-1) {
+				setHasNot(Integer.numberOfTrailingZeros(others), 1<<card);
+			}
+		}
+	}
+
+	/**
+	 * Record that an owner does not have the given cards.
+	 * A card that then has only one possible owner must be theirs.
+	 * @param owner
+	 * @param cards
+	 */
+	private void setHasNot(int owner, int cards) {
+		cards &= ~hasNot[owner];
+		if (cards==0) return;
+		if ((cards&has[owner])!=0) throw new IllegalStateException("Contradiction in notebook");
+		hasNot[owner] |= cards;
+		enqueue(owner);
+		for (int c=cards; c!=0; c &= c-1) {
+			int card = Integer.numberOfTrailingZeros(c);
+			owners[card] &= ~(1<<owner);
+			if (owners[card]==0) throw new IllegalStateException("Contradiction in notebook");
+			if (Integer.bitCount(owners[card])==1) {
+				setHas(Integer.numberOfTrailingZeros(owners[card]), 1<<card);
+			}
+		}
+	}
+
+	/**
+	 * Record that an owner has at least one of the given cards.
+	 * @param owner
+	 * @param cards
+	 */
+	private void addClause(int owner, int cards) {
+		if (nClauses[owner]==clauses[owner].length) {
+			clauses[owner] = Arrays.copyOf(clauses[owner], nClauses[owner]*2);
+		}
+		clauses[owner][nClauses[owner]++] = cards;
+		enqueue(owner);
+	}
+
+	private void enqueue(int owner) {
+		if ((queued&(1<<owner))!=0) return;
+		queued |= 1<<owner;
+		queue[tail] = owner;
+		tail = (tail+1)%queue.length;
+	}
+
+	/**
+	 * Apply the consequences of every owner whose facts have changed,
+	 * until nothing more can be deduced.
+	 */
+	private void propagate() {
+		while (queued!=0) {
+			int owner = queue[head];
+			head = (head+1)%queue.length;
+			queued &= ~(1<<owner);
+			if (owner==envelope) {
+				//the envelope holds exactly one card of each kind
+				fillGroup(owner, CardSet.CHARACTERS, 1);
+				fillGroup(owner, CardSet.WEAPONS, 1);
+				fillGroup(owner, CardSet.ROOMS, 1);
+			} else {
+				fillGroup(owner, CardSet.ALL, size[owner]);
+			}
+			simplifyClauses(owner);
+		}
+	}
+
+	/**
+	 * Given an owner holds exactly count cards from a group, if they are all known
+	 * the rest of the group is not theirs, and if only count remain possible they are.
+	 * @param owner
+	 * @param group
+	 * @param count
+	 */
+	private void fillGroup(int owner, int group, int count) {
+		int known = Integer.bitCount(has[owner]&group);
+		int possible = group & ~hasNot[owner];
+		if (known>count || Integer.bitCount(possible)<count) {
+			throw new IllegalStateException("Contradiction in notebook");
+		}
+		if (known==count) {
+			setHasNot(owner, group & ~has[owner]);
+		} else if (Integer.bitCount(possible)==count) {
+			setHas(owner, possible);
+		}
+	}
+
+	/**
+	 * Drop an owner's clauses that are satisfied, and resolve those left with one possible card.
+	 * @param owner
+	 */
+	private void simplifyClauses(int owner) {
+		int[] list = clauses[owner];
+		int n = 0;
+		for (int i=0; i<nClauses[owner]; i++) {
+			int clause = list[i];
+			if ((clause&has[owner])!=0) continue;
+			clause &= ~hasNot[owner];
+			if (clause==0) throw new IllegalStateException("Contradiction in notebook");
+			if (Integer.bitCount(clause)==1) {
+				setHas(owner, clause);
+				continue;
+			}
+			list[n++] = clause;
+		}
+		//setHas may have re-queued this owner, which will look at the clauses again
+		if (n<nClauses[owner]) Arrays.fill(list, n, nClauses[owner], 0);
+		nClauses[owner] = n;
+	}
+
+	/**
+	 * Return roughly how many bytes this notebook takes up.
+	 * @return
+	 */
+	public long footprint() {
+		long bytes = 64 + 5*(16+4*has.length) + 16+4*owners.length + 16+4*clauses.length;
+		for (int[] owned : clauses) bytes += 16+4*owned.length;
+		return bytes;
+	}
+}
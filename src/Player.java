@@ -1,6 +1,4 @@
-import java.awt.Color;
 import java.awt.Graphics;
-import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -14,9 +12,11 @@ public class Player {
 
 	private int uid;
 	private String name;
-	private List<Card> hand =  new ArrayList<Card>();
+	private int hand; //the cards in this player's hand, as a CardSet
+	private int seen; //the cards other players have shown, as a CardSet
 	private int x; //x location on board
 	private int y; //y location on board
+	private Board board; //board to notify of movement
 	private boolean isEliminated = false;
 	private boolean playing;
 	
@@ -56,7 +56,7 @@ public class Player {
 	 * @return
 	 */
 	public String getName() {
-		return new Character(uid).toString();
+		return Character.valueOf(uid).toString();
 	}
 	
 	public int getX() {
@@ -121,6 +121,14 @@ public class Player {
 	 * @return
 	 */
 	public List<Card> getHand() {
+		return CardSet.toList(hand);
+	}
+	
+	/**
+	 * Return the player's hand as a CardSet.
+	 * @return
+	 */
+	public int getHandSet() {
 		return hand;
 	}
 	
@@ -129,7 +137,42 @@ public class Player {
 	 * @param c
 	 */
 	public void dealCard(Card c) {
-		hand.add(c);
+		hand |= CardSet.of(c);
+	}
+	
+	/**
+	 * Record a card another player has shown to this player.
+	 * @param c
+	 */
+	public void see(Card c) {
+		seen |= CardSet.of(c);
+	}
+	
+	/**
+	 * Return the cards other players have shown to this player.
+	 * @return
+	 */
+	public List<Card> getSeen() {
+		return CardSet.toList(seen);
+	}
+	
+	/**
+	 * Return the cards this player knows are not in the envelope,
+	 * as they are in their hand or have been shown to them, as a CardSet.
+	 * @return
+	 */
+	public int getKnown() {
+		return hand|seen;
+	}
+	
+	/**
+	 * Return if this player knows the given card is not in the envelope,
+	 * as it is in their hand or has been shown to them.
+	 * @param c
+	 * @return
+	 */
+	public boolean knows(Card c) {
+		return ((hand|seen)&CardSet.of(c))!=0;
 	}
 	
 	/**
@@ -140,23 +183,22 @@ public class Player {
 	}
 	
 	/**
-	 * Compare a given array of cards against this player's hand, 
-	 * and report if there exist any matches.
+	 * Return the card in this player's hand that matches one of the given cards,
+	 * or null if there is none.
 	 * @param cards
 	 * @return
 	 */
-	public String compareCards(Card[] cards) {
-		String output = "";
-		for (Card c1 : hand) {
-			for (Card c2 : cards) {
-				if (c1.equals(c2)) {
-					output+="Player " + getPlayerName() + " has matching card " + c1.toString();
-					return output;
-				}
-			}
-		}
-		output+=("Player "+ getPlayerName() + " has no matching cards");
-		return output;
+	public Card matchingCard(Card[] cards) {
+		return CardSet.first(matching(CardSet.of(cards)));
+	}
+	
+	/**
+	 * Return the cards in this player's hand that are in the given CardSet.
+	 * @param cards
+	 * @return
+	 */
+	public int matching(int cards) {
+		return hand&cards;
 	}
 	
 	/**
@@ -165,7 +207,18 @@ public class Player {
 	 * @param y
 	 */
 	public void movePlayer(int x, int y) {
+		int oldX = this.x;
+		int oldY = this.y;
 		this.x=x; this.y=y;
+		if (board!=null) board.playerMoved(this, oldX, oldY);
+	}
+	
+	/**
+	 * Set the board this is on, so it can be told when this moves.
+	 * @param board
+	 */
+	void setBoard(Board board) {
+		this.board = board;
 	}
 	
 	/**
@@ -175,10 +228,7 @@ public class Player {
 	 * @param tileY
 	 */
 	public void drawSelf(Graphics g, double tileX, double tileY) {
-		g.setColor(new Character(uid).getColor());
-		g.fillOval((int)(tileX*x), (int)(tileY*y), (int)(tileX), (int)(tileY));
-		g.setColor(Color.black);
-		g.drawOval((int)(tileX*x), (int)(tileY*y), (int)(tileX), (int)(tileY));
+		SpriteAtlas.forTile(tileX, tileY).drawCharacter(g, uid, (int)(tileX*x), (int)(tileY*y));
 	}
 	
 }
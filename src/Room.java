@@ -1,8 +1,4 @@
 import java.awt.Image;
-import java.io.File;
-import java.io.IOException;
-
-import javax.imageio.ImageIO;
 
 
 /**
@@ -16,13 +12,12 @@ public class Room implements Card {
 	
 	private int val;
 	private static String[] cards = {"Kitchen","Dining","Lounge","Hall","Study","Library","Billiard","Conservatory","Ballroom"};
-	private static final String IMAGE_PATH = "resources/";
-	private Image image;
+	//the single shared instance of each card, see valueOf()
+	private static final Room[] instances = createInstances();
 	
 	public Room (int i) {
 		if (i<0||i>=cards.length) throw new RuntimeException();
 		val = i;
-		image = loadImage(toString()+".gif");
 	}
 	
 	public Room (String str) {
@@ -37,10 +32,48 @@ public class Room implements Card {
 		if (!match) throw new RuntimeException();
 	}
 	
+	/**
+	 * Return the shared instance of the card with the given index.
+	 * @param i
+	 * @return
+	 */
+	public static Room valueOf(int i) {
+		if (i<0||i>=instances.length) throw new RuntimeException();
+		return instances[i];
+	}
+	
+	/**
+	 * Return the shared instance of the card with the given name.
+	 * @param str
+	 * @return
+	 */
+	public static Room valueOf(String str) {
+		for (int i=0; i<cards.length; i++) {
+			if (cards[i].equalsIgnoreCase(str)) return instances[i];
+		}
+		throw new RuntimeException();
+	}
+	
+	private static Room[] createInstances() {
+		Room[] instances = new Room[cards.length];
+		for (int i=0; i<cards.length; i++) {
+			instances[i] = new Room(i);
+		}
+		return instances;
+	}
+	
 	public String toString() {
 		return cards[val];
 	}
 	
+	/**
+	 * Return this room's index in the list of rooms.
+	 * @return
+	 */
+	public int getIndex() {
+		return val;
+	}
+	
 	/**
 	 * Statically check if a given string is a valid room.
 	 * @param room
@@ -88,24 +121,15 @@ public class Room implements Card {
 		return (room.val==this.val);
 	}
 	
-	public Image getImage() {
-		return image;
+	public int ordinal() {
+		return CardSet.ROOM_BASE+val;
 	}
 	
 	/**
-	 * Load an image from the file system, using a given filename.
-	 * 
-	 * @param filename
+	 * Return the image of this card, from the shared image cache.
 	 * @return
 	 */
-	public static Image loadImage(String filename) {
-		Image img;
-		try {
-			File file = new File(IMAGE_PATH+filename);
-			img = ImageIO.read(file);
-		} catch (IOException e) {
-			throw new RuntimeException("Unable to load image: " + filename);
-		}
-		return img;
+	public Image getImage() {
+		return ImageCache.get(toString()+".gif");
 	}
 }
@@ -0,0 +1,101 @@
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.swing.ImageIcon;
+
+
+/**
+ * The ScaledImageCache holds icons of images already rescaled to the GUI's current scale,
+ * so the cards and die are only rescaled once per scale rather than every time they are shown.
+ * Entries are keyed by the source image, which is shared by every card that shows it.
+ * The cache holds a bounded number of icons, dropping the least recently used,
+ * and is emptied whenever the scale changes, as the old sizes will no longer be asked for.
+ * Only used from the event thread.
+ * @author Edwin
+ *
+ */
+public class ScaledImageCache {
+
+	private final int capacity;
+	private double scale = Double.NaN;
+	private final Map<Image,ImageIcon> icons;
+
+	/**
+	 * Create a cache holding at most the given number of icons.
+	 * @param capacity
+	 */
+	public ScaledImageCache(final int capacity) {
+		this.capacity = capacity;
+		icons = new LinkedHashMap<Image,ImageIcon>(capacity*2, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Image,ImageIcon> eldest) {
+				return size()>ScaledImageCache.this.capacity;
+			}
+		};
+	}
+
+	/**
+	 * Return an icon of the given image rescaled by the given scale,
+	 * scaling it only if it is not already cached at that scale.
+	 * @param image
+	 * @param scale
+	 * @return
+	 */
+	public ImageIcon get(Image image, double scale) {
+		if (scale!=this.scale) {
+			icons.clear();
+			this.scale = scale;
+		}
+		ImageIcon icon = icons.get(image);
+		if (icon==null) {
+			int width = (int)(image.getWidth(null)*scale);
+			int height = (int)(image.getHeight(null)*scale);
+			icon = new ImageIcon(getScaledImage(image, width, height));
+			icons.put(image, icon);
+		}
+		return icon;
+	}
+
+	/**
+	 * Scale the given images ahead of time, so showing them later does no work.
+	 * @param images
+	 * @param scale
+	 */
+	public void prewarm(Iterable<Image> images, double scale) {
+		for (Image image : images) {
+			get(image, scale);
+		}
+	}
+
+	/**
+	 * Return the number of icons held.
+	 * @return
+	 */
+	public int size() {
+		return icons.size();
+	}
+
+	/**
+	 * Given a image, rescale it to size.
+	 * This method courtesy of stackoverflow.
+	 * @param srcImg
+	 * @param w
+	 * @param h
+	 * @return
+	 */
+	private static Image getScaledImage(Image srcImg, int w, int h){
+	    BufferedImage resizedImg = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+	    Graphics2D g2 = resizedImg.createGraphics();
+	    g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, 
+	    		RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+	    g2.drawImage(srcImg, 0, 0, w, h, null);
+	    g2.dispose();
+	    return resizedImg;
+	}
+}
@@ -0,0 +1,181 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+
+/**
+ * A Session is one game hosted by a SessionManager, played by people who send their
+ * moves, suggestions and accusations whenever they like, such as over a network.
+ * It is the game's Controller, and only remembers whose turn it is and what they may still do,
+ * so while it waits for a player it holds no thread, just its game.
+ * Every method may be called from any thread.
+ * @author Edwin
+ *
+ */
+public class Session implements Controller {
+
+	private static final int nChars = 6;
+	private static final int minPlayers = 3;
+
+	private final long id;
+	private List<String> names;
+	private Game game;
+	private Player turn; //the player whose turn it is, or null if the game is over
+	private int die;
+	private boolean suggested;
+	private volatile long lastActive;
+
+	/**
+	 * Start a game between the given players, who play the first characters in turn order.
+	 * @param id
+	 * @param names
+	 * @param random
+	 */
+	public Session(long id, List<String> names, SplittableRandom random) {
+		if (names.size()<minPlayers || names.size()>nChars) throw new IllegalArgumentException("Players must be 3-6");
+		this.id = id;
+		this.names = new ArrayList<String>(names);
+		lastActive = System.currentTimeMillis();
+		game = new Game(this, random);
+		synchronized (this) {
+			game.start();
+		}
+	}
+
+	public long getId() {
+		return id;
+	}
+
+	public Game getGame() {
+		return game;
+	}
+
+	/**
+	 * Return the player whose turn it is, or null if the game is over.
+	 * @return
+	 */
+	public synchronized Player getTurn() {
+		return turn;
+	}
+
+	/**
+	 * Return the moves the current player has left.
+	 * @return
+	 */
+	public synchronized int getDie() {
+		return die;
+	}
+
+	/**
+	 * Return when a player last did anything, in milliseconds since the epoch.
+	 * @return
+	 */
+	public long getLastActive() {
+		return lastActive;
+	}
+
+	/**
+	 * Move the current player, returning the moves used, or -1 if they can not move there.
+	 * @param x
+	 * @param y
+	 * @return
+	 */
+	public synchronized int move(int x, int y) {
+		Player p = active();
+		int moves = game.board.movePlayer(p, x, y, die);
+		if (moves>-1) die -= moves;
+		return moves;
+	}
+
+	/**
+	 * The current player suggests from the room they are in, once a turn.
+	 * @param weapon
+	 * @param character
+	 * @return
+	 */
+	public synchronized SuggestionResult suggest(Weapon weapon, Character character) {
+		Player p = active();
+		if (suggested) throw new IllegalStateException("Already suggested this turn");
+		if (!game.board.isRoom(p.getX(), p.getY())) throw new IllegalStateException("Not in a room");
+		suggested = true;
+		return game.suggest(p, weapon.toString(), character.toString());
+	}
+
+	/**
+	 * The current player accuses, which ends their turn, and the game if they are right.
+	 * @param room
+	 * @param character
+	 * @param weapon
+	 * @return
+	 */
+	public synchronized AccusationResult accuse(Room room, Character character, Weapon weapon) {
+		AccusationResult result = game.accuse(active(), room, character, weapon);
+		endTurn();
+		return result;
+	}
+
+	/**
+	 * End the current player's turn, starting the next.
+	 */
+	public synchronized void endTurn() {
+		Player p = active();
+		turn = null;
+		game.endTurn(p);
+	}
+
+	/**
+	 * Return the player whose turn it is, noting the session is in use.
+	 * @return
+	 */
+	private Player active() {
+		if (turn==null) throw new IllegalStateException("The game is over");
+		lastActive = System.currentTimeMillis();
+		return turn;
+	}
+
+	/**
+	 * Return roughly how many bytes this session's game takes up.
+	 * @return
+	 */
+	public synchronized long footprint() {
+		long bytes = game.board.footprint();
+		for (Player p : game.getPlayers()) {
+			Notebook notebook = game.getNotebook(p);
+			if (notebook!=null) bytes += notebook.footprint();
+		}
+		return bytes + 64*game.getPlayers().size();
+	}
+
+	@Override
+	public List<Player> initialisePlayers() {
+		List<Player> players = new ArrayList<Player>();
+		for (int i=0; i<nChars; i++) {
+			players.add(i<names.size() ? new Player(i, names.get(i)) : new Player(i));
+		}
+		names = null;
+		return players;
+	}
+
+	@Override
+	public void startGame(Game game) {
+	}
+
+	/**
+	 * Wait for the player to act, or skip them if they have been eliminated.
+	 */
+	@Override
+	public void takeTurn(Player p, int die) {
+		if (p.isEliminated()) {
+			game.endTurn(p);
+			return;
+		}
+		turn = p;
+		this.die = die;
+		suggested = false;
+	}
+
+	@Override
+	public void endGame(Player winner) {
+		turn = null;
+	}
+}
@@ -0,0 +1,156 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * The SessionManager hosts many independent games at once in one program, each in a Session
+ * found by its id. A session waiting for its players holds no thread, only its game,
+ * so thousands can be idle at the same time.
+ * Sessions nobody has used for a while, and finished games, are evicted by evictIdle(),
+ * and new sessions are refused once the games would take more than the memory budget.
+ * Run as a program, it creates idle games and reports how much memory they take.
+ * Usage: SessionManager [sessions] [players]
+ * @author Edwin
+ *
+ */
+public class SessionManager {
+
+	private final ConcurrentHashMap<Long,Session> sessions = new ConcurrentHashMap<Long,Session>();
+	private final AtomicLong nextId = new AtomicLong(1);
+	private final long idleTimeout;
+	private final long maxBytes;
+	private final SplittableRandom random;
+	//a recent estimate of the total bytes used by the sessions, see footprint()
+	private final AtomicLong bytes = new AtomicLong();
+
+	/**
+	 * Host sessions that are evicted after the given milliseconds without use,
+	 * taking no more than roughly the given number of bytes.
+	 * @param idleTimeout
+	 * @param maxBytes
+	 * @param random
+	 */
+	public SessionManager(long idleTimeout, long maxBytes, SplittableRandom random) {
+		this.idleTimeout = idleTimeout;
+		this.maxBytes = maxBytes;
+		this.random = random;
+	}
+
+	public static void main(String[] args) {
+		int n = args.length>0 ? Integer.parseInt(args[0]) : 10000;
+		int nPlayers = args.length>1 ? Integer.parseInt(args[1]) : 6;
+		List<String> names = new ArrayList<String>();
+		for (int i=0; i<nPlayers; i++) names.add("Player " + (i+1));
+		Runtime runtime = Runtime.getRuntime();
+		SessionManager manager = new SessionManager(30*60*1000, runtime.maxMemory(), new SplittableRandom());
+		long before = usedMemory(runtime);
+		long start = System.nanoTime();
+		for (int i=0; i<n; i++) manager.create(names);
+		double millis = (System.nanoTime()-start)/1e6;
+		long used = usedMemory(runtime)-before;
+		System.out.printf("%d idle %d player games created in %.0f ms on %d threads%n", manager.size(),
+				nPlayers, millis, Thread.activeCount());
+		System.out.printf("Heap used: %.1f MB, %d bytes per game (estimated %d)%n", used/1e6,
+				used/n, manager.footprint()/n);
+	}
+
+	private static long usedMemory(Runtime runtime) {
+		for (int i=0; i<3; i++) System.gc();
+		return runtime.totalMemory()-runtime.freeMemory();
+	}
+
+	/**
+	 * Start a new game between the given players, and return its session.
+	 * Idle sessions are evicted first if the budget has been reached.
+	 * @param names
+	 * @return
+	 */
+	public Session create(List<String> names) {
+		if (bytes.get()>=maxBytes) {
+			evictIdle(System.currentTimeMillis());
+			if (bytes.get()>=maxBytes) throw new IllegalStateException("Too many sessions");
+		}
+		SplittableRandom stream;
+		synchronized (random) {
+			stream = random.split();
+		}
+		Session session = new Session(nextId.getAndIncrement(), names, stream);
+		sessions.put(session.getId(), session);
+		bytes.addAndGet(session.footprint());
+		return session;
+	}
+
+	/**
+	 * Return the session with the given id, or null if there is none.
+	 * @param id
+	 * @return
+	 */
+	public Session get(long id) {
+		return sessions.get(id);
+	}
+
+	/**
+	 * Remove the session with the given id, returning it, or null if there was none.
+	 * @param id
+	 * @return
+	 */
+	public Session remove(long id) {
+		Session session = sessions.remove(id);
+		if (session!=null) bytes.addAndGet(-session.footprint());
+		return session;
+	}
+
+	/**
+	 * Remove every finished session, and every session not used since the idle timeout
+	 * before the given time. Returns the number removed.
+	 * @param now
+	 * @return
+	 */
+	public int evictIdle(long now) {
+		int evicted = 0;
+		for (Iterator<Session> it = sessions.values().iterator(); it.hasNext();) {
+			Session session = it.next();
+			if (session.getGame().isOver() || now-session.getLastActive()>idleTimeout) {
+				it.remove();
+				evicted++;
+			}
+		}
+		if (evicted>0) footprint();
+		return evicted;
+	}
+
+	public int size() {
+		return sessions.size();
+	}
+
+	/**
+	 * Return the ids of every session.
+	 * @return
+	 */
+	public long[] getIds() {
+		long[] ids = new long[sessions.size()];
+		int n = 0;
+		for (Long id : sessions.keySet()) {
+			if (n==ids.length) ids = Arrays.copyOf(ids, n*2+1);
+			ids[n++] = id;
+		}
+		return Arrays.copyOf(ids, n);
+	}
+
+	/**
+	 * Add up how many bytes every session takes up now, as games grow as they are played,
+	 * and return it.
+	 * @return
+	 */
+	public long footprint() {
+		long total = 0;
+		for (Session session : sessions.values()) total += session.footprint();
+		bytes.set(total);
+		return total;
+	}
+}
@@ -0,0 +1,176 @@
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+
+/**
+ * The Simulator plays many complete games between bots, spread across all cores,
+ * and reports how fast they ran, how often each seat and character won,
+ * and how long the games lasted.
+ * Every game draws from its own random stream, derived from a single master seed and
+ * the game's number, so a run gives the same results however its games are scheduled.
+ * Usage: Simulator [games] [players] [seed]
+ * @author Edwin
+ *
+ */
+public class Simulator {
+
+	private static final int nChars = 6;
+	//games below this many are played in one task rather than split further
+	private static final int batchSize = 64;
+
+	public static void main(String[] args) {
+		int games = args.length>0 ? Integer.parseInt(args[0]) : 100000;
+		int nPlayers = args.length>1 ? Integer.parseInt(args[1]) : 6;
+		long seed = args.length>2 ? Long.parseLong(args[2]) : System.nanoTime();
+		DistanceTable.preload();
+		long start = System.nanoTime();
+		Results results = run(games, nPlayers, seed, ForkJoinPool.commonPool());
+		double seconds = (System.nanoTime()-start)/1e9;
+		System.out.println("Seed " + seed + ", " + nPlayers + " players, "
+				+ ForkJoinPool.commonPool().getParallelism() + " threads");
+		System.out.println(results.toString());
+		System.out.printf("%.0f games/sec%n", results.games/seconds);
+	}
+
+	/**
+	 * Play the given number of games with the given number of bots on the given pool.
+	 * @param games
+	 * @param nPlayers
+	 * @param seed
+	 * @param pool
+	 * @return
+	 */
+	public static Results run(int games, int nPlayers, long seed, ForkJoinPool pool) {
+		return pool.invoke(new Batch(0, games, nPlayers, seed));
+	}
+
+	/**
+	 * Play a single game from the given seed, adding its outcome to the results,
+	 * and return the finished game.
+	 * @param nPlayers
+	 * @param seed
+	 * @param results
+	 * @return
+	 */
+	public static Game play(int nPlayers, long seed, Results results) {
+		SplittableRandom random = new SplittableRandom(seed);
+		BotController bots = new BotController(nPlayers, random.split());
+		Game game = new Game(bots, random);
+		game.play();
+		results.games++;
+		results.turns += bots.getTurns();
+		Player winner = game.getWinner();
+		if (winner==null) {
+			results.noWinner++;
+			return game;
+		}
+		List<Player> players = game.getPlayers();
+		int seat = 0;
+		for (Player p : players) {
+			if (p==winner) break;
+			if (p.isPlaying()) seat++;
+		}
+		results.winsBySeat[seat]++;
+		results.winsByCharacter[winner.getUid()]++;
+		return game;
+	}
+
+	/**
+	 * Return the seed for a game, mixing the master seed with the game's number
+	 * so neighbouring games get unrelated streams.
+	 * @param seed
+	 * @param game
+	 * @return
+	 */
+	public static long seedFor(long seed, long game) {
+		long z = seed + game*0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 33)) * 0xFF51AFD7ED558CCDL;
+		z = (z ^ (z >>> 33)) * 0xC4CEB9FE1A85EC53L;
+		return z ^ (z >>> 33);
+	}
+
+	/**
+	 * The combined outcome of a number of games.
+	 */
+	public static class Results {
+		public long games;
+		public long turns;
+		public long noWinner;
+		public long[] winsBySeat = new long[nChars];
+		public long[] winsByCharacter = new long[nChars];
+
+		/**
+		 * Add another set of results to these.
+		 * @param other
+		 */
+		public void add(Results other) {
+			games += other.games;
+			turns += other.turns;
+			noWinner += other.noWinner;
+			for (int i=0; i<nChars; i++) {
+				winsBySeat[i] += other.winsBySeat[i];
+				winsByCharacter[i] += other.winsByCharacter[i];
+			}
+		}
+
+		public String toString() {
+			StringBuilder output = new StringBuilder();
+			output.append(games).append(" games, average length ")
+					.append(String.format("%.1f", games==0 ? 0.0 : (double)turns/games))
+					.append(" turns, ").append(noWinner).append(" without a winner");
+			output.append("\nWin rate by seat:");
+			for (int i=0; i<nChars; i++) {
+				output.append(String.format(" %d=%.1f%%", i+1, percent(winsBySeat[i])));
+			}
+			output.append("\nWin rate by character:");
+			for (int i=0; i<nChars; i++) {
+				output.append(String.format(" %s=%.1f%%", Character.valueOf(i),
+						percent(winsByCharacter[i])));
+			}
+			return output.toString();
+		}
+
+		private double percent(long wins) {
+			return games==0 ? 0 : 100.0*wins/games;
+		}
+	}
+
+	/**
+	 * Plays a range of games, splitting it in half until it is small enough to play directly.
+	 */
+	private static class Batch extends RecursiveTask<Results> {
+
+		private static final long serialVersionUID = 1L;
+
+		private int from;
+		private int to;
+		private int nPlayers;
+		private long seed;
+
+		Batch(int from, int to, int nPlayers, long seed) {
+			this.from = from;
+			this.to = to;
+			this.nPlayers = nPlayers;
+			this.seed = seed;
+		}
+
+		@Override
+		protected Results compute() {
+			if (to-from<=batchSize) {
+				Results results = new Results();
+				for (int i=from; i<to; i++) {
+					play(nPlayers, seedFor(seed, i), results);
+				}
+				return results;
+			}
+			int mid = (from+to)>>>1;
+			Batch left = new Batch(from, mid, nPlayers, seed);
+			left.fork();
+			Results results = new Batch(mid, to, nPlayers, seed).compute();
+			results.add(left.join());
+			return results;
+		}
+	}
+}
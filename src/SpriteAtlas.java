@@ -0,0 +1,119 @@
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * The SpriteAtlas is a single image holding every token drawn on the board,
+ * the six character counters and the six weapons, pre-rendered at one tile size.
+ * Drawing a token is then one copy of part of the atlas, rather than
+ * scaling a weapon's image or filling and outlining an oval every time.
+ * There is one atlas per tile size, shared by every view of the board at that size.
+ * @author Edwin
+ *
+ */
+public class SpriteAtlas {
+
+	private static final int nChars = 6;
+	private static final int nWeapons = 6;
+	//atlases by tile size, dropped once too many sizes have been used
+	private static final ConcurrentHashMap<Long,SpriteAtlas> atlases = new ConcurrentHashMap<Long,SpriteAtlas>();
+	private static final int maxAtlases = 8;
+	//the atlas last asked for, which is almost always the one wanted next
+	private static volatile SpriteAtlas last;
+
+	private final BufferedImage image;
+	private final int width; //size of a tile
+	private final int height;
+	//each sprite has an extra pixel on the right and bottom for the counters' outlines
+	private final int cellWidth;
+	private final int cellHeight;
+
+	private SpriteAtlas(int width, int height) {
+		this.width = width;
+		this.height = height;
+		cellWidth = width+1;
+		cellHeight = height+1;
+		image = new BufferedImage(Math.max(1, nChars*cellWidth), Math.max(1, 2*cellHeight),
+				BufferedImage.TYPE_INT_ARGB);
+		Graphics g = image.getGraphics();
+		for (int i=0; i<nChars; i++) {
+			g.setColor(Character.valueOf(i).getColor());
+			g.fillOval(i*cellWidth, 0, width, height);
+			g.setColor(Color.black);
+			g.drawOval(i*cellWidth, 0, width, height);
+		}
+		for (int i=0; i<nWeapons; i++) {
+			g.drawImage(Weapon.valueOf(i).getImage(), i*cellWidth, cellHeight, width, height, null);
+		}
+		g.dispose();
+	}
+
+	/**
+	 * Return the atlas for tiles of the given size, in pixels, creating it if needed.
+	 * @param tileX
+	 * @param tileY
+	 * @return
+	 */
+	public static SpriteAtlas forTile(double tileX, double tileY) {
+		int width = (int)tileX;
+		int height = (int)tileY;
+		SpriteAtlas atlas = last;
+		if (atlas!=null && atlas.width==width && atlas.height==height) return atlas;
+		long key = ((long)width<<32)|height;
+		atlas = atlases.get(key);
+		if (atlas==null) {
+			if (atlases.size()>=maxAtlases) atlases.clear();
+			atlas = new SpriteAtlas(width, height);
+			SpriteAtlas existing = atlases.putIfAbsent(key, atlas);
+			if (existing!=null) atlas = existing;
+		}
+		last = atlas;
+		return atlas;
+	}
+
+	/**
+	 * Draw the given character's counter with its top left corner at (x,y).
+	 * @param g
+	 * @param character
+	 * @param x
+	 * @param y
+	 */
+	public void drawCharacter(Graphics g, int character, int x, int y) {
+		draw(g, character, 0, x, y);
+	}
+
+	/**
+	 * Draw the given weapon with its top left corner at (x,y).
+	 * @param g
+	 * @param weapon
+	 * @param x
+	 * @param y
+	 */
+	public void drawWeapon(Graphics g, int weapon, int x, int y) {
+		draw(g, weapon, 1, x, y);
+	}
+
+	private void draw(Graphics g, int column, int row, int x, int y) {
+		int sx = column*cellWidth;
+		int sy = row*cellHeight;
+		g.drawImage(image, x, y, x+cellWidth, y+cellHeight, sx, sy, sx+cellWidth, sy+cellHeight, null);
+	}
+
+	/**
+	 * Return the whole atlas image.
+	 * @return
+	 */
+	public BufferedImage getImage() {
+		return image;
+	}
+
+	public int getTileWidth() {
+		return width;
+	}
+
+	public int getTileHeight() {
+		return height;
+	}
+}
@@ -0,0 +1,78 @@
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * A SuggestionResult is the outcome of a suggestion: who made it, the cards suggested,
+ * the players who had none of them, and the player who refuted it with the card they showed.
+ * It is only turned into text by the GUI.
+ * @author Edwin
+ *
+ */
+public class SuggestionResult {
+
+	private Player suggester;
+	private Card[] suggested;
+	private List<Player> passed;
+	private Player refuter;
+	private Card shown;
+
+	/**
+	 * @param suggester
+	 * @param suggested
+	 * @param passed the players asked before the refuter, in order
+	 * @param refuter the refuting player, or null if nobody could
+	 * @param shown the card the refuter showed, or null
+	 */
+	public SuggestionResult(Player suggester, Card[] suggested, List<Player> passed, Player refuter, Card shown) {
+		this.suggester = suggester;
+		this.suggested = suggested;
+		this.passed = Collections.unmodifiableList(passed);
+		this.refuter = refuter;
+		this.shown = shown;
+	}
+
+	public Player getSuggester() {
+		return suggester;
+	}
+
+	public Card[] getSuggested() {
+		return suggested.clone();
+	}
+
+	public List<Player> getPassed() {
+		return passed;
+	}
+
+	/**
+	 * Return the player who refuted the suggestion, or null if nobody could.
+	 * @return
+	 */
+	public Player getRefuter() {
+		return refuter;
+	}
+
+	/**
+	 * Return the card shown to the suggester, or null if nobody could refute.
+	 * @return
+	 */
+	public Card getShown() {
+		return shown;
+	}
+
+	/**
+	 * Return the card the given player sees from this suggestion, which is the card shown
+	 * if they are the suggester or the refuter, and otherwise null,
+	 * as everyone else only learns who refuted it.
+	 * @param viewer
+	 * @return
+	 */
+	public Card getShownTo(Player viewer) {
+		if (viewer==null || (viewer!=suggester && viewer!=refuter)) return null;
+		return shown;
+	}
+
+	public boolean isRefuted() {
+		return refuter!=null;
+	}
+}
@@ -1,9 +1,19 @@
 import static org.junit.Assert.*;
 
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
 
+import org.junit.AfterClass;
 import org.junit.Before;
+import org.junit.BeforeClass;
 import org.junit.Test;
 
 
@@ -12,6 +22,27 @@ public class Tests {
 	Player p2 = new Player(1,"1");
 	List<Player> players = new ArrayList<Player>();
 	Board board;
+	private static File cache;
+	
+	/**
+	 * Cache the distance table in a directory of the tests' own, not the shared temp directory.
+	 * @throws IOException
+	 */
+	@BeforeClass
+	public static void useTestCache() throws IOException {
+		cache = Files.createTempDirectory("cluedo-tests").toFile();
+		System.setProperty("cluedo.cache", cache.getPath());
+	}
+	
+	@AfterClass
+	public static void removeTestCache() {
+		File[] files = cache.listFiles();
+		if (files!=null) {
+			for (File file : files) file.delete();
+		}
+		cache.delete();
+		System.clearProperty("cluedo.cache");
+	}
 	
 	@Before
 	public void setup() {
@@ -96,6 +127,584 @@ public class Tests {
 		assertFalse(board.isValidMove(1, 19, 0, 19));
 	}
 	
+	@Test
+	public void testMoveUsesCorridorTiles() {
+		assertEquals(4, board.movePlayer(p1, 7, 20, 4));
+		assertTrue(p1.isHere(7, 20));
+	}
+	
+	@Test
+	public void testMoveTooFar() {
+		assertEquals(-1, board.movePlayer(p1, 7, 20, 3));
+		assertTrue(p1.isHere(7, 24));
+	}
+	
+	@Test
+	public void testLongMoveWithinRoom() {
+		p1.movePlayer(8, 12);
+		assertEquals(1, board.movePlayer(p1, 0, 9, 1));
+		assertTrue(p1.isHere(0, 9));
+	}
+	
+	@Test
+	public void testLeavingRoomCostsDoor() {
+		p1.movePlayer(5, 19);
+		assertEquals(-1, board.movePlayer(p1, 7, 19, 1));
+		assertEquals(2, board.movePlayer(p1, 7, 19, 2));
+	}
+	
+	@Test
+	public void testReachableRemainingMoves() {
+		int[] reach = board.reachable(p1, 6);
+		assertEquals(6, reach[24*25+7]);
+		assertEquals(5, reach[23*25+7]);
+		assertEquals(-1, reach[24*25+6]);
+	}
+	
+	@Test
+	public void testPathFollowsMove() {
+		int[] path = board.pathTo(p1, 7, 20, 4);
+		assertEquals(5, path.length);
+		assertEquals(24*25+7, path[0]);
+		assertEquals(20*25+7, path[4]);
+		for (int i=1; i<path.length; i++) {
+			assertTrue(board.isValidMove(path[i-1]%25, path[i-1]/25, path[i]%25, path[i]/25));
+		}
+		assertNull(board.pathTo(p1, 7, 20, 3));
+	}
+	
+	@Test
+	public void testLocNames() {
+		assertEquals("corridor", board.getLoc(7, 23));
+		assertEquals("start", board.getLoc(7, 24));
+		assertEquals("passage", board.getLoc(0, 19));
+		assertEquals("lounge", board.getLoc(5, 20));
+		assertEquals("offscreen", board.getLoc(7, 25));
+	}
+	
+	@Test
+	public void testTileClasses() {
+		assertEquals(Board.TILE_DOOR, board.getTile(6, 19));
+		assertEquals(Board.TILE_WALL, board.getTile(-1, 0));
+		assertEquals(new Room("ballroom").getIndex(), board.getRoom(10, 3));
+		assertEquals(-1, board.getRoom(7, 23));
+	}
+	
+	@Test
+	public void testOccupancyFollowsPlayers() {
+		assertSame(p1, board.getPlayerAt(7, 24));
+		p1.movePlayer(7, 23);
+		assertNull(board.getPlayerAt(7, 24));
+		assertSame(p1, board.getPlayerAt(7, 23));
+		assertTrue(board.isOccupied(7, 23));
+		assertFalse(board.isOccupied(7, 24));
+	}
+	
+	@Test
+	public void testOccupancyFollowsWeapons() {
+		board.moveObj("rope", "study");
+		int[] loc = findWeapon("rope");
+		assertEquals("study", board.getLoc(loc[0], loc[1]));
+		assertEquals("Weapon Rope", board.hover(loc[0], loc[1]));
+		board.moveObj("rope", "kitchen");
+		assertNull(board.getWeaponAt(loc[0], loc[1]));
+		loc = findWeapon("rope");
+		assertEquals("kitchen", board.getLoc(loc[0], loc[1]));
+	}
+	
+	private int[] findWeapon(String name) {
+		for (int x=0; x<25; x++) {
+			for (int y=0; y<25; y++) {
+				WeaponLoc w = board.getWeaponAt(x, y);
+				if (w!=null && w.getName().equalsIgnoreCase(name)) return new int[]{x,y};
+			}
+		}
+		return null;
+	}
+	
+	@Test
+	public void testDistanceAlongCorridor() {
+		assertEquals(4, board.distance(7, 24, 7, 20));
+		assertEquals(0, board.distance(7, 24, 7, 24));
+	}
+	
+	@Test
+	public void testDistanceThroughPassage() {
+		assertEquals(1, board.distance(0, 19, 23, 5));
+		assertEquals(2, board.distance(1, 19, 23, 5));
+	}
+	
+	@Test
+	public void testDistanceUnreachable() {
+		assertEquals(-1, board.distance(7, 23, 7, 24));
+		assertEquals(-1, board.distance(7, 23, 6, 24));
+	}
+	
+	@Test
+	public void testDistanceMatchesReachable() {
+		int[] reach = board.reachable(p1, 6);
+		for (int i=0; i<reach.length; i++) {
+			if (reach[i]>-1) assertEquals(6-reach[i], board.distance(7, 24, i%25, i/25));
+		}
+	}
+	
+	@Test
+	public void testEmptySpaceFollowsOccupancy() {
+		int[] loc = board.getEmptySpaceInRoom("hall");
+		assertEquals("hall", board.getLoc(loc[0], loc[1]));
+		assertFalse(board.isOccupied(loc[0], loc[1]));
+		p1.movePlayer(loc[0], loc[1]);
+		int[] next = board.getEmptySpaceInRoom("hall");
+		assertFalse(loc[0]==next[0] && loc[1]==next[1]);
+		p1.movePlayer(7, 24);
+		assertArrayEquals(loc, board.getEmptySpaceInRoom("hall"));
+	}
+	
+	@Test
+	public void testEmptySpaceNotNextToDoor() {
+		for (int r=0; r<9; r++) {
+			int[] loc = board.getEmptySpaceInRoom(r);
+			for (int[] d : new int[][]{{1,0},{-1,0},{0,1},{0,-1}}) {
+				int tile = board.getTile(loc[0]+d[0], loc[1]+d[1]);
+				assertEquals(0, tile&(Board.TILE_DOOR|Board.TILE_PASSAGE));
+			}
+		}
+	}
+	
+	@Test
+	public void testHeadlessBotGame() {
+		BotController bots = new BotController(4, new SplittableRandom(1));
+		Game game = new Game(bots, new SplittableRandom(2));
+		game.play();
+		assertNotNull(game.getWinner());
+		assertTrue(bots.getTurns()>0);
+	}
+	
+	@Test
+	public void testSimulationReproducible() {
+		ForkJoinPool one = new ForkJoinPool(1);
+		ForkJoinPool many = new ForkJoinPool(4);
+		Simulator.Results a;
+		Simulator.Results b;
+		try {
+			a = Simulator.run(100, 4, 42, one);
+			b = Simulator.run(100, 4, 42, many);
+		} finally {
+			one.shutdown();
+			many.shutdown();
+		}
+		assertEquals(100, a.games);
+		assertEquals(a.toString(), b.toString());
+		assertEquals(a.turns, b.turns);
+	}
+	
+	@Test
+	public void testCardsInterned() {
+		assertSame(Character.valueOf(3), Character.valueOf("green"));
+		assertSame(Weapon.valueOf(0), Weapon.valueOf("candlestick"));
+		assertSame(Room.valueOf(8), Room.valueOf("ballroom"));
+		assertTrue(Room.valueOf(8).equals(new Room(8)));
+	}
+	
+	@Test
+	public void testImagesLoadedOnce() {
+		assertSame(Room.valueOf(0).getImage(), new Room(0).getImage());
+	}
+	
+	@Test
+	public void testCardOrdinals() {
+		for (int i=0; i<CardSet.nCards; i++) {
+			assertEquals(i, CardSet.card(i).ordinal());
+		}
+		assertEquals(21, CardSet.size(CardSet.ALL));
+		assertEquals(CardSet.CHARACTERS, CardSet.of(Character.valueOf(0)) * 0x3F);
+	}
+	
+	@Test
+	public void testMatchingCard() {
+		p1.dealCard(Weapon.valueOf("rope"));
+		p1.dealCard(Room.valueOf("hall"));
+		Card[] suggestion = {Room.valueOf("hall"), Weapon.valueOf("pipe"), Character.valueOf("plum")};
+		assertTrue(Room.valueOf("hall").equals(p1.matchingCard(suggestion)));
+		assertNull(p2.matchingCard(suggestion));
+		assertEquals(2, CardSet.size(p1.getHandSet()));
+	}
+	
+	@Test
+	public void testDealPartitionsDeck() {
+		BotController bots = new BotController(5, new SplittableRandom(3));
+		Game game = new Game(bots, new SplittableRandom(4));
+		game.initialiseGame();
+		int dealt = 0;
+		for (Player p : game.getPlayers()) {
+			assertEquals(0, dealt&p.getHandSet());
+			dealt |= p.getHandSet();
+		}
+		assertEquals(3, CardSet.size(game.getEnvelope()));
+		assertEquals(CardSet.ALL, dealt|game.getEnvelope());
+	}
+	
+	@Test
+	public void testSuggestionAndAccusationResults() {
+		BotController bots = new BotController(4, new SplittableRandom(9));
+		Game game = new Game(bots, new SplittableRandom(10));
+		game.initialiseGame();
+		Player first = game.getPlayers().get(0);
+		int envelope = game.getEnvelope();
+		Card[] cards = CardSet.toList(envelope).toArray(new Card[3]);
+		SuggestionResult suggestion = game.compareToOtherPlayers(first.getUid(), cards);
+		assertFalse(suggestion.isRefuted());
+		assertNull(suggestion.getShown());
+		assertEquals(3, suggestion.getPassed().size());
+		Room room = (Room)CardSet.first(envelope&CardSet.ROOMS);
+		Character character = (Character)CardSet.first(envelope&CardSet.CHARACTERS);
+		Weapon wrong = (Weapon)CardSet.first(CardSet.WEAPONS&~envelope);
+		AccusationResult accusation = game.accuse(first, room, character, wrong);
+		assertTrue(accusation.isCharacterCorrect() && accusation.isRoomCorrect());
+		assertFalse(accusation.isWeaponCorrect() || accusation.isCorrect());
+		assertTrue(first.isEliminated());
+	}
+	
+	@Test
+	public void testShownCardOnlyToSuggesterAndRefuter() {
+		Game game = new Game(new BotController(4, new SplittableRandom(9)), new SplittableRandom(10));
+		game.initialiseGame();
+		List<Player> players = game.getPlayers();
+		int envelope = game.getEnvelope();
+		Card held = CardSet.first(players.get(1).getHandSet());
+		Card[] cards = {CardSet.first(envelope&CardSet.ROOMS), CardSet.first(envelope&CardSet.CHARACTERS), held};
+		SuggestionResult suggestion = game.compareToOtherPlayers(players.get(0).getUid(), cards);
+		assertSame(players.get(1), suggestion.getRefuter());
+		assertSame(held, suggestion.getShownTo(players.get(0)));
+		assertSame(held, suggestion.getShownTo(players.get(1)));
+		assertNull(suggestion.getShownTo(players.get(2)));
+	}
+	
+	@Test
+	public void testServerTakesTurnsOverLoopback() throws IOException {
+		GameServer server = new GameServer(3, 0, new SplittableRandom(4));
+		server.start();
+		GameClient[] clients = new GameClient[4];
+		try {
+			//one at a time, so they are seated in order
+			String[] replies = {"WELCOME Scarlett", "WELCOME Mustard", "WELCOME White"};
+			for (int i=0; i<replies.length; i++) {
+				clients[i] = new GameClient("localhost", server.getPort(), 5000);
+				clients[i].send("JOIN player " + i);
+				assertEquals(replies[i], clients[i].await(replies[i].split(" ")[0]));
+			}
+			//the spectator asks for the binary protocol, and is sent the board as it joins mid-game
+			GameClient spectator = new GameClient("localhost", server.getPort(), 5000);
+			clients[3] = spectator;
+			spectator.useBinary();
+			spectator.await(WireProtocol.BOARD);
+			spectator.send("JOIN player 3");
+			assertEquals("WATCHING", spectator.await(WireProtocol.TEXT).getText());
+			int[] start = new int[WireProtocol.nTokens];
+			board.getTokenTiles(start);
+			assertEquals(start[0], spectator.getTiles()[0]);
+			String hand = clients[1].await("HAND");
+			clients[0].await("TURN");
+			clients[1].send("END");
+			assertEquals("ERROR It is not your turn", clients[1].await("ERROR"));
+			clients[0].send("END");
+			assertTrue(clients[1].await("TURN").startsWith("TURN Mustard "));
+			assertEquals(1, spectator.await(WireProtocol.ROLL).player);
+			//accusing with a card from their own hand is always wrong
+			String[] accusation = {"Kitchen", "Scarlett", "Rope"};
+			String card = hand.split(" ")[1];
+			if (Room.isRoom(card)) accusation[0] = card;
+			else if (Character.isCharacter(card)) accusation[1] = card;
+			else accusation[2] = card;
+			clients[1].send("ACCUSE " + accusation[0] + " " + accusation[1] + " " + accusation[2]);
+			assertEquals("ELIMINATED Mustard", clients[2].await("ELIMINATED"));
+			assertFalse(spectator.await(WireProtocol.ACCUSE).correct);
+			assertEquals(1, spectator.await(WireProtocol.ELIMINATE).player);
+			assertTrue(clients[2].await("TURN").startsWith("TURN White "));
+		} finally {
+			for (GameClient client : clients) {
+				if (client!=null) client.close();
+			}
+			server.close();
+		}
+	}
+	
+	@Test
+	public void testSecondEndTurnDoesNotSkipNextPlayer() {
+		final List<Player> turns = new ArrayList<Player>();
+		Game game = new Game(new Controller() {
+			public List<Player> initialisePlayers() {
+				List<Player> players = new ArrayList<Player>();
+				for (int i=0; i<6; i++) players.add(i<3 ? new Player(i, "p" + i) : new Player(i));
+				return players;
+			}
+			public void startGame(Game game) {
+			}
+			public void takeTurn(Player p, int die) {
+				turns.add(p);
+			}
+			public void endGame(Player winner) {
+			}
+		}, new SplittableRandom(3));
+		game.start();
+		Player first = turns.get(0);
+		assertTrue(game.endTurn(first));
+		//a second request for the same turn, such as a double press, arrives after the next has begun
+		assertFalse(game.endTurn(first));
+		assertEquals(2, turns.size());
+		assertEquals("Mustard", turns.get(1).getName());
+		assertTrue(game.endTurn(turns.get(1)));
+		assertEquals("White", turns.get(2).getName());
+	}
+	
+	@Test
+	public void testAllEliminatedEndsGameWithoutWinner() {
+		final List<Player> ended = new ArrayList<Player>();
+		final Game[] game = new Game[1];
+		game[0] = new Game(new Controller() {
+			public List<Player> initialisePlayers() {
+				List<Player> players = new ArrayList<Player>();
+				for (int i=0; i<6; i++) players.add(i<3 ? new Player(i, "p" + i) : new Player(i));
+				return players;
+			}
+			public void startGame(Game game) {
+			}
+			public void takeTurn(Player p, int die) {
+				//everyone is eliminated at once, such as by leaving together
+				for (Player other : game[0].getPlayers()) other.eliminate();
+				game[0].endTurn(p);
+			}
+			public void endGame(Player winner) {
+				ended.add(winner);
+			}
+		}, new SplittableRandom(3));
+		game[0].start();
+		assertTrue(game[0].isOver());
+		assertEquals(1, ended.size());
+		assertNull(ended.get(0));
+	}
+	
+	@Test
+	public void testSessionsWaitWithoutThreads() {
+		SessionManager manager = new SessionManager(1000, Long.MAX_VALUE, new SplittableRandom(5));
+		List<String> names = new ArrayList<String>();
+		names.add("a");
+		names.add("b");
+		names.add("c");
+		try {
+			manager.create(names.subList(0, 2));
+			fail("Two players should be refused");
+		} catch (IllegalArgumentException e) {
+		}
+		Session first = manager.create(names);
+		Session second = manager.create(names);
+		assertSame(second, manager.get(second.getId()));
+		assertEquals("Scarlett", first.getTurn().getName());
+		first.endTurn();
+		assertEquals("Mustard", first.getTurn().getName());
+		assertEquals("Scarlett", second.getTurn().getName());
+		assertTrue(manager.footprint()>0);
+		assertEquals(0, manager.evictIdle(second.getLastActive()));
+		assertEquals(2, manager.evictIdle(first.getLastActive()+2000));
+		assertNull(manager.get(first.getId()));
+	}
+	
+	@Test
+	public void testWireProtocolSendsBoardDeltas() {
+		ByteBuffer buffer = ByteBuffer.allocate(256);
+		WireProtocol.Sender sender = new WireProtocol.Sender();
+		WireProtocol.Receiver receiver = new WireProtocol.Receiver();
+		WireProtocol.Message message = new WireProtocol.Message();
+		int[] tiles = new int[WireProtocol.nTokens];
+		board.getTokenTiles(tiles);
+		//the first update is sent in full, but lost
+		assertTrue(sender.write(buffer, tiles));
+		buffer.clear();
+		//so the next one is too, and is acknowledged
+		p1.movePlayer(7, 23);
+		board.getTokenTiles(tiles);
+		sender.write(buffer, tiles);
+		buffer.flip();
+		assertTrue(WireProtocol.read(buffer, message));
+		assertTrue(receiver.apply(message));
+		sender.ack(message.update);
+		assertEquals(23*25+7, receiver.getTiles()[0]);
+		assertArrayEquals(tiles, receiver.getTiles());
+		//a turn: roll, the move as a board update and the moves left, suggestion, a pass, a hidden refutation
+		buffer.clear();
+		p1.movePlayer(7, 22);
+		board.getTokenTiles(tiles);
+		WireProtocol.writeRoll(buffer, 0, 1);
+		sender.write(buffer, tiles);
+		WireProtocol.writeRoll(buffer, 0, 0);
+		WireProtocol.writeSuggestion(buffer, 0, 1, 7, 12);
+		WireProtocol.writePass(buffer, 2);
+		WireProtocol.writeRefutation(buffer, 3, -1);
+		buffer.flip();
+		assertEquals(24, buffer.remaining());
+		int refuted = -1;
+		while (WireProtocol.read(buffer, message)) {
+			if (message.type==WireProtocol.REFUTE) refuted = message.player;
+			if (message.type==WireProtocol.BOARD) {
+				assertEquals(1, Integer.bitCount(message.moved));
+				assertTrue(receiver.apply(message));
+			}
+		}
+		assertEquals(3, refuted);
+		assertArrayEquals(tiles, receiver.getTiles());
+		//nothing moved since the last acknowledged update, so nothing to send
+		sender.ack(receiver.getLatest());
+		buffer.clear();
+		assertFalse(sender.write(buffer, tiles));
+		//half a message is left for later
+		WireProtocol.writeHand(buffer, 0, CardSet.ROOMS);
+		buffer.flip().limit(3);
+		assertFalse(WireProtocol.read(buffer, message));
+		buffer.limit(5);
+		assertTrue(WireProtocol.read(buffer, message));
+		assertEquals(CardSet.ROOMS, message.hand);
+		buffer.clear();
+		WireProtocol.writeText(buffer, "ERROR Not in a room");
+		buffer.flip();
+		assertTrue(WireProtocol.read(buffer, message));
+		assertEquals("ERROR Not in a room", message.getText());
+	}
+	
+	@Test
+	public void testMovesMarkTilesDirty() {
+		long[] dirty = new long[10];
+		board.drainDirtyTiles(dirty);
+		dirty = new long[10];
+		assertFalse(board.drainDirtyTiles(dirty));
+		int fromX = p1.getX();
+		int fromY = p1.getY();
+		p1.movePlayer(fromX, fromY-1);
+		assertTrue(board.drainDirtyTiles(dirty));
+		assertTrue((dirty[(fromY*25+fromX)>>6]&(1L<<(fromY*25+fromX)))!=0);
+		assertTrue((dirty[((fromY-1)*25+fromX)>>6]&(1L<<((fromY-1)*25+fromX)))!=0);
+		assertFalse(board.drainDirtyTiles(new long[10]));
+	}
+	
+	@Test
+	public void testScaledImagesCached() {
+		ScaledImageCache cache = new ScaledImageCache(2);
+		Image image = Room.valueOf(0).getImage();
+		assertSame(cache.get(image, 0.5), cache.get(image, 0.5));
+		assertEquals((int)(image.getWidth(null)*0.5), cache.get(image, 0.5).getIconWidth());
+		cache.get(Room.valueOf(1).getImage(), 0.5);
+		cache.get(Room.valueOf(2).getImage(), 0.5);
+		assertEquals(2, cache.size());
+		cache.get(image, 0.75);
+		assertEquals(1, cache.size());
+	}
+	
+	@Test
+	public void testBackgroundScaledOffCanvas() {
+		Image small = BoardCanvas.scaleBackground(0.5);
+		Image large = BoardCanvas.scaleBackground(1);
+		assertEquals(2*small.getWidth(null), large.getWidth(null), 1);
+	}
+	
+	@Test
+	public void testSpriteAtlasShared() {
+		SpriteAtlas atlas = SpriteAtlas.forTile(20.5, 20.5);
+		assertSame(atlas, SpriteAtlas.forTile(20.9, 20.1));
+		assertEquals(20, atlas.getTileWidth());
+		//the centre of Scarlett's counter is red
+		assertEquals(0xFFFF0000, atlas.getImage().getRGB(10, 10));
+		BufferedImage tile = new BufferedImage(21, 21, BufferedImage.TYPE_INT_ARGB);
+		atlas.drawCharacter(tile.getGraphics(), 0, 0, 0);
+		assertEquals(0xFFFF0000, tile.getRGB(10, 10));
+	}
+	
+	@Test
+	public void testRendererDrawsTokensAndReusesImage() {
+		BoardRenderer renderer = new BoardRenderer(250);
+		BufferedImage image = renderer.render(board);
+		assertEquals(250, image.getWidth());
+		//scarlett starts at (7,24), so the centre of that 10 pixel tile is red
+		assertEquals(0xFFFF0000, image.getRGB(75, 245));
+		assertSame(image, renderer.render(board));
+	}
+	
+	@Test
+	public void testNotebookResolvesClause() {
+		Notebook notebook = new Notebook(new int[]{6,6,6});
+		//seat 1 refutes scarlett, candlestick, kitchen without showing this notebook's player
+		notebook.observeSuggestion(0, (1<<0)|(1<<6)|(1<<12), 1, -1);
+		assertEquals(0, notebook.getHas(1));
+		Notebook copy = new Notebook(notebook);
+		//seat 1 then passes on scarlett and candlestick, so it must have had the kitchen
+		notebook.observeSuggestion(2, (1<<0)|(1<<6)|(1<<13), -1, -1);
+		assertEquals(1<<12, notebook.getHas(1));
+		assertEquals(0, notebook.getEnvelopeCandidates()&(1<<12));
+		assertEquals(0, notebook.getClauses(1).length);
+		//the copy is unchanged by later observations
+		assertEquals(0, copy.getHas(1));
+		assertEquals(1, copy.getClauses(1).length);
+	}
+	
+	@Test
+	public void testNotebookNeverRulesOutEnvelope() {
+		BotController bots = new BotController(3, new SplittableRandom(5));
+		Game game = new Game(bots, new SplittableRandom(6));
+		game.play();
+		for (Player p : game.getPlayers()) {
+			Notebook notebook = game.getNotebook(p);
+			if (notebook==null) continue;
+			int envelope = game.getEnvelope();
+			assertEquals(envelope, notebook.getEnvelopeCandidates()&envelope);
+			if (notebook.isSolved()) assertEquals(envelope, notebook.getEnvelopeCandidates());
+		}
+	}
+	
+	@Test
+	public void testProbabilityUniformFromOwnHand() {
+		BotController bots = new BotController(6, new SplittableRandom(7));
+		Game game = new Game(bots, new SplittableRandom(8));
+		game.initialiseGame();
+		Player first = game.getPlayers().get(0);
+		Notebook notebook = game.getNotebook(first);
+		ForkJoinPool pool = new ForkJoinPool(2);
+		EnvelopeProbability probability;
+		try {
+			probability = new EnvelopeProbability(notebook, pool);
+		} finally {
+			pool.shutdown();
+		}
+		int candidates = notebook.getEnvelopeCandidates();
+		double triples = CardSet.size(candidates&CardSet.CHARACTERS)
+				*CardSet.size(candidates&CardSet.WEAPONS)*CardSet.size(candidates&CardSet.ROOMS);
+		int envelope = game.getEnvelope();
+		assertEquals(1/triples, probability.getProbability((Character)CardSet.first(envelope&CardSet.CHARACTERS),
+				(Weapon)CardSet.first(envelope&CardSet.WEAPONS), (Room)CardSet.first(envelope&CardSet.ROOMS)), 1e-9);
+		for (Card card : first.getHand()) {
+			assertEquals(0, probability.getProbability(card), 0);
+		}
+	}
+	
+	@Test
+	public void testProbabilityFollowsClause() {
+		Notebook notebook = new Notebook(new int[]{6,6,6});
+		notebook.observeHand(0, (1<<2)|(1<<3)|(1<<8)|(1<<9)|(1<<14)|(1<<15));
+		//seat 2 refutes scarlett, candlestick, kitchen, so scarlett is less likely than mustard to be the murderer
+		notebook.observeSuggestion(1, (1<<0)|(1<<6)|(1<<12), 2, -1);
+		ForkJoinPool pool = new ForkJoinPool(1);
+		EnvelopeProbability probability;
+		try {
+			probability = new EnvelopeProbability(notebook, pool);
+		} finally {
+			pool.shutdown();
+		}
+		assertTrue(probability.getProbability(CardSet.card(0))<probability.getProbability(CardSet.card(1)));
+		double total = 0;
+		for (Card card : CardSet.toList(CardSet.CHARACTERS)) {
+			total += probability.getProbability(card);
+		}
+		assertEquals(1, total, 1e-9);
+		assertEquals(0, probability.getProbability(CardSet.card(2)), 0);
+	}
+	
 	@Test
 	public void testValidRoom1() {
 		try {
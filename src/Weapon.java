@@ -1,8 +1,4 @@
 import java.awt.Image;
-import java.io.File;
-import java.io.IOException;
-
-import javax.imageio.ImageIO;
 
 
 /**
@@ -17,13 +13,12 @@ public class Weapon implements Card {
 	
 	private int val;
 	private static String[] weapons = {"Candlestick","Dagger","Pipe","Revolver","Rope","Spanner"};
-	private static final String IMAGE_PATH = "resources/";
-	private Image image;
+	//the single shared instance of each card, see valueOf()
+	private static final Weapon[] instances = createInstances();
 	
 	public Weapon (int i) {
 		if (i<0||i>=weapons.length) throw new RuntimeException();
 		val = i;
-		image = loadImage(toString()+".gif");
 	}
 	
 	public Weapon (String str) {
@@ -38,6 +33,36 @@ public class Weapon implements Card {
 		if (!match) throw new RuntimeException();
 	}
 	
+	/**
+	 * Return the shared instance of the card with the given index.
+	 * @param i
+	 * @return
+	 */
+	public static Weapon valueOf(int i) {
+		if (i<0||i>=instances.length) throw new RuntimeException();
+		return instances[i];
+	}
+	
+	/**
+	 * Return the shared instance of the card with the given name.
+	 * @param str
+	 * @return
+	 */
+	public static Weapon valueOf(String str) {
+		for (int i=0; i<weapons.length; i++) {
+			if (weapons[i].equalsIgnoreCase(str)) return instances[i];
+		}
+		throw new RuntimeException();
+	}
+	
+	private static Weapon[] createInstances() {
+		Weapon[] instances = new Weapon[weapons.length];
+		for (int i=0; i<weapons.length; i++) {
+			instances[i] = new Weapon(i);
+		}
+		return instances;
+	}
+	
 	public String toString() {
 		return weapons[val];
 	}
@@ -82,24 +107,15 @@ public class Weapon implements Card {
 	}
 	
 
-	public Image getImage() {
-		return image;
+	public int ordinal() {
+		return CardSet.WEAPON_BASE+val;
 	}
 	
 	/**
-	 * Load an image from the file system, using a given filename.
-	 * 
-	 * @param filename
+	 * Return the image of this card, from the shared image cache.
 	 * @return
 	 */
-	public static Image loadImage(String filename) {
-		Image img;
-		try {
-			File file = new File(IMAGE_PATH+filename);
-			img = ImageIO.read(file);
-		} catch (IOException e) {
-			throw new RuntimeException("Unable to load image: " + filename);
-		}
-		return img;
+	public Image getImage() {
+		return ImageCache.get(toString()+".gif");
 	}
 }
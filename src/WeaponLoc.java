@@ -1,9 +1,4 @@
 import java.awt.Graphics;
-import java.awt.Image;
-import java.io.File;
-import java.io.IOException;
-
-import javax.imageio.ImageIO;
 
 
 
@@ -19,13 +14,11 @@ public class WeaponLoc {
 	private int uid;
 	private int x; //x location on board
 	private int y; //y location on board
+	private Board board; //board to notify of movement
 	private static final char[] weaponChars = new char[]{'c','k','p','g','r','w'};
-	private static final String IMAGE_PATH = "resources/";
-	private Image image;
 	
 	public WeaponLoc(int i) {
 		this.uid = i;
-		image = loadImage(getName()+".gif");
 	}
 	
 	/**
@@ -33,7 +26,14 @@ public class WeaponLoc {
 	 * @return
 	 */
 	public String getName() {
-		return new Weapon(uid).toString();
+		return Weapon.valueOf(uid).toString();
+	}
+	
+	public int getX() {
+		return x;
+	}
+	public int getY() {
+		return y;
 	}
 	
 	/**
@@ -61,7 +61,18 @@ public class WeaponLoc {
 	 * @param y
 	 */
 	public void moveWeapon(int x, int y) {
+		int oldX = this.x;
+		int oldY = this.y;
 		this.x=x; this.y=y;
+		if (board!=null) board.weaponMoved(this, oldX, oldY);
+	}
+	
+	/**
+	 * Set the board this is on, so it can be told when this moves.
+	 * @param board
+	 */
+	void setBoard(Board board) {
+		this.board = board;
 	}
 	
 	/**
@@ -79,27 +90,7 @@ public class WeaponLoc {
 	 * @param tileY
 	 */
 	public void drawSelf(Graphics g, double tileX, double tileY) {
-		g.drawImage(image, (int)(tileX*x), (int)(tileY*y), (int)(tileX), (int)(tileY), null);
+		SpriteAtlas.forTile(tileX, tileY).drawWeapon(g, uid, (int)(tileX*x), (int)(tileY*y));
 	}
 	
-
-
-	/**
-	 * Load an image from the file system, using a given filename.
-	 * 
-	 * @param filename
-	 * @return
-	 */
-	public static Image loadImage(String filename) {
-		Image img;
-		try {
-			File file = new File(IMAGE_PATH+filename);
-			img = ImageIO.read(file);
-		} catch (IOException e) {
-			throw new RuntimeException("Unable to load image: " + filename);
-		}
-		return img;
-	}
-	
-	
 }
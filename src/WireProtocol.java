@@ -0,0 +1,333 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+
+/**
+ * The WireProtocol is a compact binary format for game events, which a GameServer sends
+ * to clients that ask for it instead of lines of text.
+ * Each message is a type byte followed by a few bytes: characters and cards are their card
+ * ordinals, as in CardSet, and tiles are their index y*25+x on the Board.
+ * A die roll takes 3 bytes, a suggestion 5 and a refutation 3. Anything without a binary form,
+ * such as an error, is sent as text.
+ *
+ * Moves are sent as board updates, which are deltas. A Sender remembers the token positions
+ * it sent to one recipient, and only sends the tokens that moved since the last update the
+ * recipient acknowledged, two bytes each. A Receiver applies them to its copy of that update,
+ * so a lost update is simply covered by the next.
+ *
+ * Messages are written into, and read from, buffers the caller supplies, and read into a
+ * reusable Message, so encoding and decoding allocate nothing, apart from encoding text.
+ * @author Edwin
+ *
+ */
+public class WireProtocol {
+
+	public static final int ROLL = 1; //character, die or moves left
+	public static final int SUGGEST = 2; //suggester, character, weapon, room
+	public static final int PASS = 3; //character who could not refute
+	public static final int REFUTE = 4; //refuter, card shown or NO_CARD
+	public static final int ACCUSE = 5; //accuser, character, weapon, room, if it was correct
+	public static final int ELIMINATE = 6; //character
+	public static final int WIN = 7; //character, or -1 if every player was eliminated
+	public static final int HAND = 8; //character, CardSet of their hand
+	public static final int BOARD = 9; //update number, base update, tokens that moved
+	public static final int TEXT = 10; //length, UTF-8 bytes
+	public static final int NO_CARD = 0xFF;
+	//longest text message, in bytes
+	public static final int maxText = 0xFF;
+	//tokens on the board, the six characters and then the six weapons
+	public static final int nTokens = 12;
+	//the base of an update sent in full
+	private static final int NO_BASE = 0xFFFF;
+	//updates kept for deltas; an acknowledgement older than this gets a full update
+	private static final int window = 16;
+	private static final int tileBits = 10;
+	private static final int tileMask = (1<<tileBits)-1;
+	//length of each message type, including its type byte, or 0 if not fixed
+	private static final int[] lengths = {0, 3, 5, 2, 3, 6, 2, 2, 5, 0, 0};
+	private static final int boardHeader = 6;
+	private static final int textHeader = 2;
+
+	public static void writeRoll(ByteBuffer out, int character, int die) {
+		out.put((byte)ROLL).put((byte)character).put((byte)die);
+	}
+
+	/**
+	 * Write a suggestion, as the ordinals of its cards.
+	 * @param out
+	 * @param suggester
+	 * @param character
+	 * @param weapon
+	 * @param room
+	 */
+	public static void writeSuggestion(ByteBuffer out, int suggester, int character, int weapon, int room) {
+		out.put((byte)SUGGEST).put((byte)suggester).put((byte)character).put((byte)weapon).put((byte)room);
+	}
+
+	public static void writePass(ByteBuffer out, int character) {
+		out.put((byte)PASS).put((byte)character);
+	}
+
+	/**
+	 * Write who refuted a suggestion, and the card shown, or -1 to hide it from this recipient.
+	 * @param out
+	 * @param refuter
+	 * @param shown
+	 */
+	public static void writeRefutation(ByteBuffer out, int refuter, int shown) {
+		out.put((byte)REFUTE).put((byte)refuter).put((byte)(shown<0 ? NO_CARD : shown));
+	}
+
+	public static void writeAccusation(ByteBuffer out, int accuser, int character, int weapon, int room,
+			boolean correct) {
+		out.put((byte)ACCUSE).put((byte)accuser).put((byte)character).put((byte)weapon).put((byte)room)
+			.put((byte)(correct ? 1 : 0));
+	}
+
+	public static void writeElimination(ByteBuffer out, int character) {
+		out.put((byte)ELIMINATE).put((byte)character);
+	}
+
+	public static void writeWin(ByteBuffer out, int character) {
+		out.put((byte)WIN).put((byte)character);
+	}
+
+	/**
+	 * Write a player's hand, as a CardSet in three bytes.
+	 * @param out
+	 * @param character
+	 * @param hand
+	 */
+	public static void writeHand(ByteBuffer out, int character, int hand) {
+		out.put((byte)HAND).put((byte)character).put((byte)(hand>>>16)).putShort((short)hand);
+	}
+
+	/**
+	 * Write a line of text, cut to maxText bytes.
+	 * @param out
+	 * @param text
+	 */
+	public static void writeText(ByteBuffer out, String text) {
+		byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+		int length = Math.min(bytes.length, maxText);
+		out.put((byte)TEXT).put((byte)length).put(bytes, 0, length);
+	}
+
+	/**
+	 * Read the next message into the given Message, returning false and reading nothing
+	 * if the buffer does not hold all of it yet.
+	 * A board update is read as the tokens that moved; pass it to a Receiver to apply it.
+	 * @param in
+	 * @param into
+	 * @return
+	 */
+	public static boolean read(ByteBuffer in, Message into) {
+		if (!in.hasRemaining()) return false;
+		int start = in.position();
+		int type = in.get(start)&0xFF;
+		if (type<=0 || type>=lengths.length) throw new IllegalStateException("Unknown message type: " + type);
+		int length = lengths[type];
+		if (type==BOARD) {
+			if (in.remaining()<boardHeader) return false;
+			length = boardHeader+2*(in.get(start+5)&0xFF);
+		} else if (type==TEXT) {
+			if (in.remaining()<textHeader) return false;
+			length = textHeader+(in.get(start+1)&0xFF);
+		}
+		if (in.remaining()<length) return false;
+		in.get();
+		into.type = type;
+		switch (type) {
+		case ROLL:
+			into.player = in.get();
+			into.die = in.get();
+			break;
+		case SUGGEST:
+		case ACCUSE:
+			into.player = in.get();
+			into.character = in.get();
+			into.weapon = in.get();
+			into.room = in.get();
+			if (type==ACCUSE) into.correct = in.get()!=0;
+			break;
+		case REFUTE:
+			into.player = in.get();
+			into.shown = in.get()&0xFF;
+			if (into.shown==NO_CARD) into.shown = -1;
+			break;
+		case PASS:
+		case ELIMINATE:
+		case WIN:
+			into.player = in.get();
+			break;
+		case HAND:
+			into.player = in.get();
+			into.hand = (in.get()&0xFF)<<16 | (in.getShort()&0xFFFF);
+			break;
+		case BOARD:
+			into.update = in.getShort()&0xFFFF;
+			into.base = in.getShort()&0xFFFF;
+			int n = in.get()&0xFF;
+			into.moved = 0;
+			for (int i=0; i<n; i++) {
+				int token = in.getShort()&0xFFFF;
+				int t = token>>>tileBits;
+				if (t>=nTokens) throw new IllegalStateException("Unknown token: " + t);
+				into.moved |= 1<<t;
+				into.tiles[t] = token&tileMask;
+			}
+			break;
+		case TEXT:
+			into.textLength = in.get()&0xFF;
+			in.get(into.text, 0, into.textLength);
+			break;
+		}
+		return true;
+	}
+
+	/**
+	 * Return if update a is newer than update b, allowing for the numbers wrapping around.
+	 * @param a
+	 * @param b
+	 * @return
+	 */
+	private static boolean newer(int a, int b) {
+		int d = (a-b)&0xFFFF;
+		return d!=0 && d<0x8000;
+	}
+
+	/**
+	 * A message read from the wire, with only the fields for its type filled in.
+	 */
+	public static class Message {
+
+		public int type;
+		public int player; //the character the message is about
+		public int die;
+		public int character;
+		public int weapon;
+		public int room;
+		public int shown; //-1 if hidden
+		public boolean correct;
+		public int hand;
+		public int update;
+		public int base;
+		public int moved; //a bit for each token in a board update
+		public final int[] tiles = new int[nTokens];
+		public int textLength;
+		public final byte[] text = new byte[maxText];
+
+		/**
+		 * Return the text of a text message, as a new String.
+		 * @return
+		 */
+		public String getText() {
+			return new String(text, 0, textLength, StandardCharsets.UTF_8);
+		}
+	}
+
+	/**
+	 * Sends board updates to one recipient, as deltas against the last update they acknowledged.
+	 */
+	public static class Sender {
+
+		private final int[][] sent = new int[window][nTokens];
+		private int update = 0; //number of the next update
+		private int acked = -1; //last update acknowledged, or -1 if none
+
+		/**
+		 * Write an update for the given token positions, as from Board.getTokenTiles(),
+		 * with only the tokens that differ from the last acknowledged update.
+		 * Returns false, writing nothing, if none differ.
+		 * @param out
+		 * @param tiles
+		 * @return
+		 */
+		public boolean write(ByteBuffer out, int[] tiles) {
+			int[] base = acked<0 ? null : sent[acked%window];
+			int n = 0;
+			for (int t=0; t<nTokens; t++) {
+				if (tiles[t]>=0 && (base==null || tiles[t]!=base[t])) n++;
+			}
+			if (n==0 && base!=null) return false;
+			out.put((byte)BOARD).putShort((short)update).putShort((short)(base==null ? NO_BASE : acked))
+				.put((byte)n);
+			for (int t=0; t<nTokens; t++) {
+				if (tiles[t]>=0 && (base==null || tiles[t]!=base[t])) out.putShort((short)(t<<tileBits|tiles[t]));
+			}
+			//once the acknowledged update is overwritten, the next is sent in full
+			if (acked>=0 && update%window==acked%window) acked = -1;
+			System.arraycopy(tiles, 0, sent[update%window], 0, nTokens);
+			update = (update+1)&0xFFFF;
+			return true;
+		}
+
+		/**
+		 * The recipient has the given update.
+		 * @param received
+		 */
+		public void ack(int received) {
+			if (received<0 || received>0xFFFF) return;
+			if (!newer(update, received) || ((update-received)&0xFFFF)>window) return; //not sent, or too old
+			if (acked<0 || newer(received, acked)) acked = received;
+		}
+	}
+
+	/**
+	 * Rebuilds the token positions from the updates a Sender writes.
+	 */
+	public static class Receiver {
+
+		private final int[][] states = new int[window][nTokens];
+		private final int[] numbers = new int[window];
+		private int latest = -1;
+
+		public Receiver() {
+			Arrays.fill(numbers, -1);
+		}
+
+		/**
+		 * Apply a board update read by read(), returning false if it is older than the latest,
+		 * or its base is unknown. Acknowledge the update if it was applied.
+		 * @param update
+		 * @return
+		 */
+		public boolean apply(Message update) {
+			if (update.type!=BOARD) throw new IllegalStateException("Not a board update");
+			if (latest>=0 && !newer(update.update, latest)) return false;
+			int[] state = states[update.update%window];
+			if (update.base==NO_BASE) {
+				Arrays.fill(state, -1);
+			} else {
+				int slot = update.base%window;
+				if (numbers[slot]!=update.base) return false;
+				if (slot!=update.update%window) System.arraycopy(states[slot], 0, state, 0, nTokens);
+			}
+			for (int moved=update.moved; moved!=0; moved &= moved-1) {
+				int t = Integer.numberOfTrailingZeros(moved);
+				state[t] = update.tiles[t];
+			}
+			numbers[update.update%window] = update.update;
+			latest = update.update;
+			return true;
+		}
+
+		/**
+		 * Return the token positions from the latest update, which must not be changed.
+		 * @return
+		 */
+		public int[] getTiles() {
+			if (latest<0) throw new IllegalStateException("No board update yet");
+			return states[latest%window];
+		}
+
+		/**
+		 * Return the number of the latest update, or -1 if there has been none.
+		 * @return
+		 */
+		public int getLatest() {
+			return latest;
+		}
+	}
+}